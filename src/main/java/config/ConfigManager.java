@@ -1,16 +1,23 @@
 package config;
 
+import model.CipherSuite;
+import model.ContainerOptions;
+
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 public class ConfigManager {
     private static final Path CONFIG_DIR = Paths.get(System.getProperty("user.home"), "Documents", "CFM");
     private static final Path CONFIG_FILE = CONFIG_DIR.resolve("config.properties");
+    private static final long DEFAULT_WORKSPACE_BUDGET_MB = 1024;
 
     public static Map<String, String> loadConfig() {
         Map<String, String> config = new HashMap<>();
@@ -51,4 +58,131 @@ public class ConfigManager {
         config.put("tutorialShown", "true");
         saveConfig(config);
     }
-}
\ No newline at end of file
+
+    // Disk space that decrypted files may take in the workspace before the least recently used ones are evicted
+    public static long getWorkspaceBudget() {
+        return getLong("workspaceBudgetMB", DEFAULT_WORKSPACE_BUDGET_MB) * 1024 * 1024;
+    }
+
+    // Size of each volume file of new containers; zero keeps all data in the container file. A volume holds at
+    // least one full chunk record, so smaller sizes are raised to that.
+    public static long getVolumeSize() {
+        long volumeSize = getLong("volumeSizeMB", 0) * 1024 * 1024;
+        return volumeSize > 0 ? Math.max(volumeSize, ContainerOptions.MIN_VOLUME_SIZE) : 0;
+    }
+
+    // Directories new volumes are spread over, separated like a class path; empty means next to the container
+    public static List<Path> getVolumeDirectories() {
+        List<Path> directories = new ArrayList<>();
+        String value = loadConfig().get("volumeDirectories");
+        if (value != null) {
+            for (String directory : value.split(File.pathSeparator)) {
+                if (!directory.isBlank()) {
+                    directories.add(Paths.get(directory.trim()));
+                }
+            }
+        }
+        return directories;
+    }
+
+    // "dedup" stores files as content-defined chunks that are shared between files, "fixed" uses plain 1 MiB chunks
+    public static boolean isDeduplication() {
+        return "dedup".equalsIgnoreCase(loadConfig().getOrDefault("storageMode", "fixed").trim());
+    }
+
+    // Packs small files into shared solid blocks, which suits containers with many small files
+    public static boolean isSolid() {
+        return Boolean.parseBoolean(loadConfig().getOrDefault("solidMode", "false").trim());
+    }
+
+    // Trains a preset dictionary on the small files of a container, which suits many similar JSON, XML or log files
+    public static boolean isCompressionDictionary() {
+        return Boolean.parseBoolean(loadConfig().getOrDefault("compressionDictionary", "false").trim());
+    }
+
+    // Threads used to compress container data; zero uses every available processor
+    public static int getCompressionThreads() {
+        return (int) getLong("compressionThreads", 0);
+    }
+
+    // Deflater level from 0 to 9 for data that is worth compressing; -1 is the library default
+    public static int getCompressionLevel() {
+        int level = (int) getLong("compressionLevel", -1);
+        return level < -1 || level > 9 ? -1 : level;
+    }
+
+    // "deflate" (default), "lz" for faster saves and loads at a lower ratio, or "stored"
+    public static String getCompressionCodec() {
+        return loadConfig().getOrDefault("compressionCodec", "deflate");
+    }
+
+    // "auto" (default) picks the fastest cipher suite on this host for new containers, or one by name
+    public static String getCipherSuite() {
+        return loadConfig().getOrDefault("cipherSuite", "auto");
+    }
+
+    // Suite an earlier run calibrated as the fastest, or null if there is none for this JDK and processor
+    public static CipherSuite getCalibratedCipherSuite() {
+        String[] value = loadConfig().getOrDefault("calibratedCipherSuite", "").split(";");
+        if (value.length == 2 && value[1].equals(calibrationHost())) {
+            try {
+                return CipherSuite.forName(value[0]);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    public static void setCalibratedCipherSuite(Map<String, String> config, CipherSuite suite) {
+        config.put("calibratedCipherSuite", suite.getName() + ";" + calibrationHost());
+        saveConfig(config);
+    }
+
+    // A new JDK or another machine sharing the home directory can change which suite is fastest
+    private static String calibrationHost() {
+        return System.getProperty("java.version") + " " + System.getProperty("os.arch");
+    }
+
+    // Files copied at once when importing; copies mostly wait on the file system, so more than one per processor helps
+    public static int getImportThreads() {
+        return Math.max(1, (int) getLong("importThreads", 8));
+    }
+
+    // Bytes imported between saves that let a cancelled or failed import continue where it left off
+    public static long getImportCheckpointBytes() {
+        return Math.max(1, getLong("importCheckpointMB", 256)) * 1024 * 1024;
+    }
+
+    // Operations the user starts that run at the same time; the rest wait their turn by priority
+    public static int getOperationThreads() {
+        return Math.max(2, (int) getLong("operationThreads", 4));
+    }
+
+    // Progress bar updates per second during saves, loads and copies; zero shows only the end
+    public static int getProgressUpdateRate() {
+        return (int) getLong("progressUpdateRate", 30);
+    }
+
+    // Quiet period after the last change before it is saved, so bursts of edits are written together
+    public static long getSaveDelayMillis() {
+        return getLong("saveDelayMs", 1000);
+    }
+
+    // Longest a change waits for its save while edits keep coming in
+    public static long getMaxSaveDelayMillis() {
+        return getLong("maxSaveDelayMs", 10000);
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = loadConfig().get(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -1,9 +1,13 @@
 package controller;
 
+import model.CancellationToken;
+import model.ContainerIndex;
 import model.EncryptedContainer;
+import model.OperationExecutor;
 import model.User;
 import model.UserManager;
 import view.FileManager;
+import view.ProgressBarListener;
 
 import javax.crypto.SecretKey;
 import javax.swing.*;
@@ -37,18 +41,18 @@ public class ContainerManager {
             result = saveChooser.showSaveDialog(frame);
             if (result == JFileChooser.APPROVE_OPTION) {
                 File saveFile = saveChooser.getSelectedFile();
-                new Thread(() -> {
+                fileManager.getOperations().submit("Create container", OperationExecutor.Priority.NORMAL, saveFile, OperationExecutor.Access.WRITE, () -> {
                     try {
                         progressBar.setValue(0);
                         progressBar.setString(null);
                         container = new EncryptedContainer(currentUser.getEncryptionKey());
-                        container.saveContainerWithProgress(saveFile, selectedDir.toPath(), progressBar);
+                        container.saveContainerWithProgress(saveFile, selectedDir.toPath(), new ProgressBarListener(progressBar), CancellationToken.NONE);
                         JOptionPane.showMessageDialog(frame, "Container created: " + saveFile.getAbsolutePath());
                         importContainer(frame, currentUser, saveFile);
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
-                }).start();
+                });
             }
         }
     }
@@ -64,19 +68,25 @@ public class ContainerManager {
     }
 
     public void importContainer(JFrame frame, User currentUser, File file) {
-        new Thread(() -> {
+        fileManager.getOperations().submit("Open container", OperationExecutor.Priority.INTERACTIVE, file, OperationExecutor.Access.READ, () -> {
             try {
                 SwingUtilities.invokeLater(() -> {
                     progressBar.setValue(0);
                     progressBar.setString("COMPLETED");
                 });
                 container = new EncryptedContainer(currentUser.getEncryptionKey());
-                container.loadContainerWithProgress(file, tempDir, progressBar);
-                SwingUtilities.invokeLater(() -> fileManager.loadDirectory(tempDir, fileManager.getRoot()));
+                ContainerIndex index = container.readIndex(file);
+                if (index != null) {
+                    SwingUtilities.invokeLater(() -> fileManager.loadIndex(index, fileManager.getRoot()));
+                }
+                container.loadContainerWithProgress(file, tempDir, new ProgressBarListener(progressBar), CancellationToken.NONE);
+                if (index == null) {
+                    SwingUtilities.invokeLater(() -> fileManager.loadDirectory(tempDir, fileManager.getRoot()));
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        }).start();
+        });
     }
 
     public EncryptedContainer getContainer() {
@@ -1,6 +1,12 @@
 package controller;
 
+import model.FileTransfer;
+import model.OperationExecutor;
+import model.Progress;
+import model.ProgressTracker;
+import model.Workspace;
 import view.FileManager;
+import view.ProgressBarListener;
 
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -13,19 +19,13 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Comparator;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ContextMenuManager {
     private final JTree tree;
-    private final Path tempDir;
     private final DefaultTreeModel treeModel;
     private final FileManager fileManager;
     private final JProgressBar progressBar;
@@ -37,9 +37,8 @@ public class ContextMenuManager {
     private JMenuItem addFolderItem;
     private JMenuItem moveItem;
 
-    public ContextMenuManager(JTree tree, Path tempDir, DefaultTreeModel treeModel, FileManager fileManager, JProgressBar progressBar) {
+    public ContextMenuManager(JTree tree, DefaultTreeModel treeModel, FileManager fileManager, JProgressBar progressBar) {
         this.tree = tree;
-        this.tempDir = tempDir;
         this.treeModel = treeModel;
         this.fileManager = fileManager;
         this.progressBar = progressBar;
@@ -68,11 +67,11 @@ public class ContextMenuManager {
                     int row = tree.getClosestRowForLocation(e.getX(), e.getY());
                     tree.setSelectionRow(row);
                     DefaultMutableTreeNode selectedNode = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-                    Path selectedPath = tempDir.resolve(getPathForNode(selectedNode));
+                    Workspace workspace = fileManager.getWorkspace();
 
                     // Show the context menu only if a valid node is selected
                     if (selectedNode != null) {
-                        boolean isDirectory = Files.isDirectory(selectedPath);
+                        boolean isDirectory = selectedNode.isRoot() || (workspace != null && workspace.isDirectory(getEntryPath(selectedNode)));
                         addFolderItem.setVisible(isDirectory);
                         popupMenu.show(tree, e.getX(), e.getY());
                     }
@@ -123,32 +122,42 @@ public class ContextMenuManager {
     private void openFile(ActionEvent e) {
         disableContextMenuItems();
         DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-        if (node == null || tempDir == null) {
+        Workspace workspace = fileManager.getWorkspace();
+        if (node == null || workspace == null) {
             enableContextMenuItems();
             return;
         }
-        String nodeName = node.toString();
-        Path filePath = tempDir.resolve(nodeName);
-        if (Files.exists(filePath) && !Files.isDirectory(filePath)) {
-            try {
-                Desktop.getDesktop().open(filePath.toFile());
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
+        String entryPath = getEntryPath(node);
+        if (workspace.exists(entryPath) && !workspace.isDirectory(entryPath)) {
+            // The file is decrypted into the workspace the first time it is opened
+            fileManager.getOperations().submit("Open file", OperationExecutor.Priority.INTERACTIVE, workspace.getContainerFile(), OperationExecutor.Access.READ, () -> {
+                try {
+                    resetProgressBar();
+                    Path filePath = workspace.materialize(entryPath);
+                    Desktop.getDesktop().open(filePath.toFile());
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                } finally {
+                    updateProgressBarCompleted();
+                    SwingUtilities.invokeLater(this::enableContextMenuItems);
+                }
+            });
+        } else {
+            enableContextMenuItems();
         }
-        enableContextMenuItems();
     }
 
     private void renameFile(ActionEvent e) {
         disableContextMenuItems();
         DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-        if (node == null || tempDir == null) {
+        Workspace workspace = fileManager.getWorkspace();
+        if (node == null || node.isRoot() || workspace == null) {
             enableContextMenuItems();
             return;
         }
         String nodeName = node.toString();
-        Path filePath = tempDir.resolve(nodeName);
-        if (Files.exists(filePath)) {
+        String entryPath = getEntryPath(node);
+        if (workspace.exists(entryPath)) {
             String newName = (String) JOptionPane.showInputDialog(
                     tree,
                     "Rename to:",
@@ -158,20 +167,20 @@ public class ContextMenuManager {
                     null,
                     nodeName); // pre-fill with current name
             if (newName != null && !newName.isEmpty()) {
-                new Thread(() -> {
+                fileManager.getOperations().submit("Rename", OperationExecutor.Priority.NORMAL, workspace.getContainerFile(), OperationExecutor.Access.WRITE, () -> {
                     try {
                         resetProgressBar();
-                        Files.move(filePath, filePath.resolveSibling(newName), StandardCopyOption.REPLACE_EXISTING);
+                        workspace.rename(entryPath, entryPath.substring(0, entryPath.length() - nodeName.length()) + newName);
                         node.setUserObject(newName);
                         treeModel.nodeChanged(node);
-                        fileManager.saveCurrentContainerWithProgress();
+                        fileManager.requestSave();
                     } catch (IOException ex) {
                         ex.printStackTrace();
                     } finally {
                         updateProgressBarCompleted();
                         SwingUtilities.invokeLater(this::enableContextMenuItems);
                     }
-                }).start();
+                });
             } else {
                 enableContextMenuItems();
             }
@@ -183,42 +192,32 @@ public class ContextMenuManager {
     private void copyFile(ActionEvent e) {
         disableContextMenuItems();
         DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-        if (node == null || tempDir == null) {
+        Workspace workspace = fileManager.getWorkspace();
+        if (node == null || workspace == null) {
             enableContextMenuItems();
             return;
         }
-        String nodeName = node.toString();
-        Path filePath = tempDir.resolve(nodeName);
-        if (Files.exists(filePath) && !Files.isDirectory(filePath)) {
+        String entryPath = getEntryPath(node);
+        if (workspace.exists(entryPath) && !workspace.isDirectory(entryPath)) {
             JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setSelectedFile(new File(filePath.getFileName().toString()));
+            fileChooser.setSelectedFile(new File(node.toString()));
             int result = fileChooser.showSaveDialog(tree);
             if (result == JFileChooser.APPROVE_OPTION) {
                 File saveFile = fileChooser.getSelectedFile();
-                new Thread(() -> {
+                fileManager.getOperations().submit("Copy out", OperationExecutor.Priority.NORMAL, workspace.getContainerFile(), OperationExecutor.Access.READ, () -> {
                     try {
                         resetProgressBar();
-                        long fileSize = Files.size(filePath);
-                        long[] bytesCopied = {0};
-                        try (InputStream in = Files.newInputStream(filePath);
-                             OutputStream out = Files.newOutputStream(saveFile.toPath())) {
-                            byte[] buffer = new byte[1024];
-                            int bytesRead;
-                            while ((bytesRead = in.read(buffer)) != -1) {
-                                out.write(buffer, 0, bytesRead);
-                                bytesCopied[0] += bytesRead;
-                                int progress = (int) (100.0 * bytesCopied[0] / fileSize);
-                                SwingUtilities.invokeLater(() -> progressBar.setValue(progress));
-                            }
-                        }
-                        fileManager.saveCurrentContainerWithProgress();
+                        Path filePath = workspace.materialize(entryPath);
+                        ProgressTracker progress = new ProgressTracker(new ProgressBarListener(progressBar), Progress.Phase.COPYING);
+                        progress.setTotals(Files.size(filePath), 1);
+                        FileTransfer.copy(filePath, saveFile.toPath(), progress);
                     } catch (IOException ex) {
                         ex.printStackTrace();
                     } finally {
                         updateProgressBarCompleted();
                         SwingUtilities.invokeLater(this::enableContextMenuItems);
                     }
-                }).start();
+                });
             } else {
                 enableContextMenuItems();
             }
@@ -230,88 +229,61 @@ public class ContextMenuManager {
     private void deleteFile(ActionEvent e) {
         disableContextMenuItems();
         DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-        if (node == null || tempDir == null) {
+        Workspace workspace = fileManager.getWorkspace();
+        if (node == null || node.isRoot() || workspace == null) {
             enableContextMenuItems();
             return;
         }
-        String nodeName = node.toString();
-        Path filePath = tempDir.resolve(nodeName);
-        if (Files.exists(filePath)) {
-            new Thread(() -> {
+        String entryPath = getEntryPath(node);
+        if (workspace.exists(entryPath)) {
+            fileManager.getOperations().submit("Delete", OperationExecutor.Priority.NORMAL, workspace.getContainerFile(), OperationExecutor.Access.WRITE, () -> {
                 try {
                     resetProgressBar();
-                    BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
-                    if (attrs.isDirectory()) {
-                        deleteDirectoryRecursively(filePath);
-                    } else {
-                        Files.delete(filePath);
-                    }
+                    workspace.delete(entryPath);
                     node.removeFromParent();
                     treeModel.reload();
-                    fileManager.saveCurrentContainerWithProgress();
+                    fileManager.requestSave();
                 } catch (IOException ex) {
                     ex.printStackTrace();
                 } finally {
                     updateProgressBarCompleted();
                     SwingUtilities.invokeLater(this::enableContextMenuItems);
                 }
-            }).start();
+            });
         } else {
             enableContextMenuItems();
         }
     }
 
-    private void deleteDirectoryRecursively(Path path) throws IOException {
-        try (Stream<Path> paths = Files.walk(path)) {
-            long totalSize = paths.mapToLong(p -> p.toFile().length()).sum();
-
-            // Walk the path again to delete files
-            try (Stream<Path> deletePaths = Files.walk(path)) {
-                long[] processedSize = {0};
-
-                deletePaths.sorted(Comparator.reverseOrder())
-                        .forEach(p -> {
-                            try {
-                                Files.delete(p);
-                                processedSize[0] += p.toFile().length();
-                                int progress = (int) (100.0 * processedSize[0] / totalSize);
-                                SwingUtilities.invokeLater(() -> progressBar.setValue(progress));
-                            } catch (IOException ex) {
-                                ex.printStackTrace();
-                            }
-                        });
-            }
-        }
-    }
-
     private void addFolder(ActionEvent e) {
         disableContextMenuItems();
         DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-        if (node == null || tempDir == null) {
+        Workspace workspace = fileManager.getWorkspace();
+        if (node == null || workspace == null) {
             enableContextMenuItems();
             return;
         }
 
         String newName = JOptionPane.showInputDialog("New folder name:");
         if (newName != null && !newName.isEmpty()) {
-            new Thread(() -> {
+            fileManager.getOperations().submit("Add folder", OperationExecutor.Priority.NORMAL, workspace.getContainerFile(), OperationExecutor.Access.WRITE, () -> {
                 try {
                     resetProgressBar();
-                    Path parentPath = getPathForNode(node);
-                    Path newFolderPath = parentPath.resolve(newName);
+                    String parentPath = getEntryPath(node);
+                    String newFolderPath = parentPath.isEmpty() ? newName : parentPath + "/" + newName;
 
                     // Create the new directory
-                    Files.createDirectories(newFolderPath);
+                    workspace.addDirectory(newFolderPath);
 
                     // Check if the directory was created successfully
-                    if (Files.isDirectory(newFolderPath)) {
+                    if (workspace.isDirectory(newFolderPath)) {
                         // Add the new node to the tree
                         DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(newName);
                         node.add(newNode);
                         treeModel.reload(node);
 
                         // Save the container with the new folder
-                        fileManager.saveCurrentContainerWithProgress();
+                        fileManager.requestSave();
 
                         System.out.println("New folder created: " + newFolderPath);
                     } else {
@@ -324,7 +296,7 @@ public class ContextMenuManager {
                     fileManager.refreshTree();
                     SwingUtilities.invokeLater(this::enableContextMenuItems);
                 }
-            }).start();
+            });
         } else {
             enableContextMenuItems();
         }
@@ -333,12 +305,12 @@ public class ContextMenuManager {
     private void moveFile(ActionEvent e) {
         disableContextMenuItems();
         DefaultMutableTreeNode sourceNode = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-        if (sourceNode == null || tempDir == null) {
+        Workspace workspace = fileManager.getWorkspace();
+        if (sourceNode == null || sourceNode.isRoot() || workspace == null) {
             enableContextMenuItems();
             return;
         }
-        String sourceNodeName = sourceNode.toString();
-        Path sourceFilePath = tempDir.resolve(sourceNodeName);
+        String sourceEntryPath = getEntryPath(sourceNode);
 
         TreePath destinationPath = selectDestinationDirectory();
         if (destinationPath == null) {
@@ -347,39 +319,37 @@ public class ContextMenuManager {
         }
 
         DefaultMutableTreeNode destinationNode = (DefaultMutableTreeNode) destinationPath.getLastPathComponent();
-        Path destinationDir;
+        String destinationDir = getEntryPath(destinationNode);
 
         // Handle root directory case
-        if (destinationNode.toString().equals("Root")) {
-            destinationDir = tempDir;
-        } else {
-            destinationDir = tempDir.resolve(getPathForNode(destinationNode));
-        }
-
-        if (!Files.isDirectory(destinationDir)) {
+        if (!destinationNode.isRoot() && !workspace.isDirectory(destinationDir)) {
             JOptionPane.showMessageDialog(tree, "Selected destination is not a directory", "Move", JOptionPane.ERROR_MESSAGE);
             enableContextMenuItems();
             return;
         }
+        if (destinationNode.isNodeAncestor(sourceNode)) {
+            JOptionPane.showMessageDialog(tree, "Cannot move a directory into itself", "Move", JOptionPane.ERROR_MESSAGE);
+            enableContextMenuItems();
+            return;
+        }
 
-        Path destinationFilePath = destinationDir.resolve(sourceFilePath.getFileName().toString());
-        new Thread(() -> {
+        String destinationEntryPath = destinationDir.isEmpty() ? sourceNode.toString() : destinationDir + "/" + sourceNode;
+        fileManager.getOperations().submit("Move", OperationExecutor.Priority.NORMAL, workspace.getContainerFile(), OperationExecutor.Access.WRITE, () -> {
             try {
                 resetProgressBar();
-                Files.move(sourceFilePath, destinationFilePath, StandardCopyOption.REPLACE_EXISTING);
+                workspace.rename(sourceEntryPath, destinationEntryPath);
                 treeModel.removeNodeFromParent(sourceNode);
-                DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(destinationFilePath.getFileName().toString());
-                destinationNode.add(newNode);
+                destinationNode.add(sourceNode);
                 treeModel.reload(destinationNode);
-                fileManager.saveCurrentContainerWithProgress();
-                JOptionPane.showMessageDialog(tree, "File moved successfully", "Move", JOptionPane.INFORMATION_MESSAGE);
+                fileManager.requestSave();
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(tree, "File moved successfully", "Move", JOptionPane.INFORMATION_MESSAGE));
             } catch (IOException ex) {
-                JOptionPane.showMessageDialog(tree, "Error moving file: " + ex.getMessage(), "Move", JOptionPane.ERROR_MESSAGE);
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(tree, "Error moving file: " + ex.getMessage(), "Move", JOptionPane.ERROR_MESSAGE));
             } finally {
                 updateProgressBarCompleted();
                 SwingUtilities.invokeLater(this::enableContextMenuItems);
             }
-        }).start();
+        });
     }
 
     private TreePath selectDestinationDirectory() {
@@ -410,16 +380,16 @@ public class ContextMenuManager {
         return selectedPath[0];
     }
 
-    // Helper method to get the path for a node
-    private Path getPathForNode(DefaultMutableTreeNode node) {
+    // Helper method to get the container path for a node, relative to the workspace and separated by '/'
+    private String getEntryPath(DefaultMutableTreeNode node) {
         TreeNode[] nodes = node.getPath();
-        StringBuilder path = new StringBuilder(tempDir.toString());
+        List<String> names = new ArrayList<>();
 
         for (TreeNode n : nodes) {
-            if (n.toString().equals("Root")) continue;
-            path.append(File.separator).append(n);
+            if (((DefaultMutableTreeNode) n).isRoot()) continue;
+            names.add(n.toString());
         }
-        return Paths.get(path.toString());
+        return String.join("/", names);
     }
 
     public void disableContextMenu() {
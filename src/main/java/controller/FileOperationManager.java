@@ -1,6 +1,12 @@
 package controller;
 
+import config.ConfigManager;
+import model.FileTransfer;
+import model.OperationExecutor;
+import model.Progress;
+import model.ProgressTracker;
 import view.FileManager;
+import view.ProgressBarListener;
 
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -8,6 +14,7 @@ import javax.swing.tree.DefaultTreeModel;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -55,40 +62,18 @@ public class FileOperationManager {
         int result = fileChooser.showOpenDialog(frame);
         if (result == JFileChooser.APPROVE_OPTION) {
             File[] selectedFiles = fileChooser.getSelectedFiles();
-            new Thread(() -> {
+            fileManager.getOperations().submit("Import files", OperationExecutor.Priority.NORMAL, () -> {
                 try {
                     progressBar.setValue(0);
                     progressBar.setString(null);
-                    for (File file : selectedFiles) {
-                        Path targetPath = tempDir.resolve(file.getName());
-                        if (file.isDirectory()) {
-                            copyDirectory(file.toPath(), targetPath);
-                        } else {
-                            Files.copy(file.toPath(), targetPath, StandardCopyOption.REPLACE_EXISTING);
-                        }
-                    }
+                    ProgressTracker progress = new ProgressTracker(new ProgressBarListener(progressBar), Progress.Phase.IMPORTING, ConfigManager.getProgressUpdateRate());
+                    FileTransfer.copyInto(Arrays.stream(selectedFiles).map(File::toPath).toList(), tempDir, ConfigManager.getImportThreads(), progress, null);
+                    progress.finish();
                     SwingUtilities.invokeLater(() -> loadDirectory(tempDir, (DefaultMutableTreeNode) treeModel.getRoot()));
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
-            }).start();
+            });
         }
     }
-
-    private void copyDirectory(Path source, Path target) throws IOException {
-        Files.walk(source).forEach(sourcePath -> {
-            try {
-                Path targetPath = target.resolve(source.relativize(sourcePath));
-                if (Files.isDirectory(sourcePath)) {
-                    if (!Files.exists(targetPath)) {
-                        Files.createDirectory(targetPath);
-                    }
-                } else {
-                    Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
-    }
 }
\ No newline at end of file
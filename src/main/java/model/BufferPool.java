@@ -0,0 +1,49 @@
+package model;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// A fixed number of equally sized buffers that are handed out and returned. Buffers are allocated on first use;
+// once all of them are out, acquire blocks until one comes back, which keeps producers from running ahead.
+class BufferPool {
+    private final int bufferSize;
+    private final int capacity;
+    private final BlockingQueue<byte[]> free;
+    private int allocated;
+
+    BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    byte[] acquire() throws InterruptedIOException {
+        byte[] buffer = free.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        synchronized (this) {
+            if (allocated < capacity) {
+                allocated++;
+                return new byte[bufferSize];
+            }
+        }
+        try {
+            return free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+    }
+
+    void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package model;
+
+import java.io.InterruptedIOException;
+
+// Asks a long-running save, load or import to stop. The work looks at the token between files and chunks and
+// stops with an InterruptedIOException, the same way it stops when its thread is interrupted, so whatever cleans
+// up after a failure cleans up after a cancellation too. An interrupt that lands in a FileChannel call surfaces as
+// a ClosedByInterruptException instead, which callers treat as a cancellation as well.
+public final class CancellationToken {
+    // For work that cannot be cancelled other than by interrupting its thread
+    public static final CancellationToken NONE = new CancellationToken(false);
+
+    private final boolean cancellable;
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    public void cancel() {
+        if (cancellable) {
+            cancelled = true;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled || Thread.currentThread().isInterrupted();
+    }
+
+    public void throwIfCancelled() throws InterruptedIOException {
+        if (isCancelled()) {
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+}
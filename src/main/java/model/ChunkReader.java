@@ -0,0 +1,72 @@
+package model;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+
+// Random access to the chunks of a version 2 container. Every chunk can be decrypted on its own,
+// and positional reads make it safe to decrypt several chunks from different threads at once.
+public class ChunkReader {
+    private final CryptoEngine engine = new CryptoEngine();
+    private final FileChannel channel;
+    private final SecretKey secretKey;
+    private final int chunkSize;
+    private final long dataLength;
+    private final int chunkCount;
+
+    public ChunkReader(FileChannel channel, SecretKey secretKey) throws IOException {
+        this.channel = channel;
+        this.secretKey = secretKey;
+        this.chunkSize = ContainerFormat.readChunkSize(channel);
+        this.dataLength = channel.size() - ContainerFormat.HEADER_LENGTH;
+        int recordLength = ContainerFormat.recordLength(chunkSize);
+        this.chunkCount = (int) ((dataLength + recordLength - 1) / recordLength);
+        if (chunkSize <= 0 || chunkCount == 0) {
+            throw new IOException("Container has no data chunks");
+        }
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    long getRecordEnd(int index) {
+        long end = (long) (index + 1) * ContainerFormat.recordLength(chunkSize);
+        return Math.min(end, dataLength);
+    }
+
+    public byte[] readChunk(int index) throws IOException {
+        if (index < 0 || index >= chunkCount) {
+            throw new IndexOutOfBoundsException("Chunk " + index + " out of " + chunkCount);
+        }
+        long start = (long) index * ContainerFormat.recordLength(chunkSize);
+        int length = (int) (getRecordEnd(index) - start);
+        if (length < ContainerFormat.recordLength(0)) {
+            throw new IOException("Chunk " + index + " of the container is truncated");
+        }
+        ByteBuffer record = ContainerFormat.readFully(channel, ContainerFormat.HEADER_LENGTH + start, length);
+        try {
+            Cipher cipher = engine.acquireCipher(ContainerFormat.CHUNK_TRANSFORMATION, Cipher.DECRYPT_MODE, secretKey,
+                    new GCMParameterSpec(ContainerFormat.TAG_LENGTH * 8, record.array(), 0, ContainerFormat.NONCE_LENGTH));
+            try {
+                cipher.updateAAD(ContainerFormat.associatedData(index, index == chunkCount - 1));
+                return cipher.doFinal(record.array(), ContainerFormat.NONCE_LENGTH, length - ContainerFormat.NONCE_LENGTH);
+            } finally {
+                engine.releaseCipher(cipher);
+            }
+        } catch (AEADBadTagException e) {
+            throw new IOException("Chunk " + index + " of the container is corrupt", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to decrypt chunk " + index, e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package model;
+
+// Location of one sealed record in a container file and how its plaintext was encoded.
+// Every record also has an id that is bound into its seal: deduplicated chunks are named by a keyed hash of their
+// plaintext, which several entries may share, other chunks by a random id. Containers before version 13 have
+// ids only for deduplicated chunks and do not bind them.
+// Small files in solid mode share one record: their reference is a slice of the record's plaintext.
+public class ChunkRef {
+    public static final byte CODEC_STORED = 0;
+    public static final byte CODEC_DEFLATE = 1;
+    public static final byte CODEC_LZ = 2;
+    public static final byte CODEC_DEFLATE_DICTIONARY = 3;
+
+    private final long offset;
+    private final int length;
+    private final int size;
+    private final byte codec;
+    private final byte[] id;
+    private final int sliceOffset;
+    private final int sliceLength;
+
+    public ChunkRef(long offset, int length, int size, byte codec) {
+        this(offset, length, size, codec, null);
+    }
+
+    public ChunkRef(long offset, int length, int size, byte codec, byte[] id) {
+        this(offset, length, size, codec, id, 0, size);
+    }
+
+    public ChunkRef(long offset, int length, int size, byte codec, byte[] id, int sliceOffset, int sliceLength) {
+        this.offset = offset;
+        this.length = length;
+        this.size = size;
+        this.codec = codec;
+        this.id = id;
+        this.sliceOffset = sliceOffset;
+        this.sliceLength = sliceLength;
+    }
+
+    public ChunkRef withOffset(long newOffset) {
+        return new ChunkRef(newOffset, length, size, codec, id, sliceOffset, sliceLength);
+    }
+
+    public ChunkRef slice(int offset, int length) {
+        return new ChunkRef(this.offset, this.length, size, codec, id, offset, length);
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public byte getCodec() {
+        return codec;
+    }
+
+    // Null for chunks of older containers that were not stored for deduplication
+    public byte[] getId() {
+        return id;
+    }
+
+    public boolean isSlice() {
+        return sliceOffset != 0 || sliceLength != size;
+    }
+
+    public int getSliceOffset() {
+        return sliceOffset;
+    }
+
+    // The bytes this reference contributes to its entry
+    public int getSliceLength() {
+        return sliceLength;
+    }
+
+    // The part of the record's length attributed to this reference, for progress and accounting
+    public long getStoredShare() {
+        return isSlice() && size > 0 ? (long) length * sliceLength / size : length;
+    }
+}
@@ -0,0 +1,95 @@
+package model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Sequential view over a chunked container that decrypts the next chunks in parallel while the current one is consumed
+public class ChunkedCipherInputStream extends InputStream {
+    private final ChunkReader reader;
+    private final int readAhead;
+    private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+    private int nextChunk;
+    private int consumedChunks;
+    private byte[] current = new byte[0];
+    private int position;
+
+    public ChunkedCipherInputStream(ChunkReader reader) {
+        this(reader, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ChunkedCipherInputStream(ChunkReader reader, int readAhead) {
+        this.reader = reader;
+        this.readAhead = Math.max(1, readAhead);
+    }
+
+    public long getBytesConsumed() {
+        return consumedChunks == 0 ? 0 : reader.getRecordEnd(consumedChunks - 1);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position == current.length) {
+            scheduleReadAhead();
+            CompletableFuture<byte[]> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            try {
+                current = next.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            position = 0;
+            consumedChunks++;
+        }
+        return true;
+    }
+
+    private void scheduleReadAhead() {
+        while (pending.size() < readAhead && nextChunk < reader.getChunkCount()) {
+            int index = nextChunk++;
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return reader.readChunk(index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+    }
+
+    @Override
+    public void close() {
+        pending.forEach(future -> future.cancel(false));
+        pending.clear();
+    }
+}
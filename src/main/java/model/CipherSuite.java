@@ -0,0 +1,170 @@
+package model;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+
+// Authenticated encryption schemes for the records of a container. The suite is chosen when a container is
+// created and recorded in its header, so every reader can open records of every suite. Which one is fastest
+// depends on the host: AES-GCM wins by far with AES instructions, ChaCha20-Poly1305 without them, and
+// AES-CTR with HMAC-SHA256 is there for providers that offer neither AEAD mode.
+public enum CipherSuite {
+    AES_GCM(0, "aes-gcm", "AES/GCM/NoPadding", 12, 16),
+    CHACHA20_POLY1305(1, "chacha20-poly1305", "ChaCha20-Poly1305", 12, 16),
+    AES_CTR_HMAC(2, "aes-ctr-hmac", "AES/CTR/NoPadding", 16, 32);
+
+    static final String MAC_ALGORITHM = "HmacSHA256";
+    // Nonce and tag of the suite with the largest overhead, for buffers that must fit a record of any suite
+    static final int MAX_OVERHEAD = 16 + 32;
+    private static final int CALIBRATION_BLOCK = 16 * 1024;
+    private static final int CALIBRATION_ROUND = 64;
+    private static final int CALIBRATION_PASSES = 64;
+    private static volatile CipherSuite fastest;
+    private static Thread calibration;
+
+    private final byte id;
+    private final String name;
+    private final String transformation;
+    private final int nonceLength;
+    private final int tagLength;
+
+    CipherSuite(int id, String name, String transformation, int nonceLength, int tagLength) {
+        this.id = (byte) id;
+        this.name = name;
+        this.transformation = transformation;
+        this.nonceLength = nonceLength;
+        this.tagLength = tagLength;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    String getTransformation() {
+        return transformation;
+    }
+
+    int getNonceLength() {
+        return nonceLength;
+    }
+
+    int getTagLength() {
+        return tagLength;
+    }
+
+    boolean isAead() {
+        return this != AES_CTR_HMAC;
+    }
+
+    // The nonce goes into the parameters as it is; for CTR it is the initial counter block
+    AlgorithmParameterSpec parameters(byte[] nonce) {
+        return this == AES_GCM ? new GCMParameterSpec(tagLength * 8, nonce) : new IvParameterSpec(nonce);
+    }
+
+    public static CipherSuite forId(byte id) throws IOException {
+        for (CipherSuite suite : values()) {
+            if (suite.id == id) {
+                return suite;
+            }
+        }
+        throw new IOException("Unknown cipher suite " + id);
+    }
+
+    // "auto" picks the suite calibrated as the fastest on this host
+    public static CipherSuite forName(String name) {
+        String key = name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+        if (key.equals("auto")) {
+            return fastest();
+        }
+        for (CipherSuite suite : values()) {
+            if (suite.name.equals(key)) {
+                return suite;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cipher suite " + name);
+    }
+
+    // Never waits for the calibration; until it has finished new containers use AES-GCM, the fastest on most hosts
+    public static CipherSuite fastest() {
+        CipherSuite suite = fastest;
+        return suite != null ? suite : AES_GCM;
+    }
+
+    // A result an earlier run measured on this host, so it is not measured again
+    public static void setFastest(CipherSuite suite) {
+        fastest = suite;
+    }
+
+    // Measures the suites once on a low priority thread of its own, so neither startup nor the common pool the
+    // readers decrypt on wait for it, and hands the result to the callback to keep for later runs
+    public static synchronized void calibrateInBackground(Consumer<CipherSuite> done) {
+        if (calibration != null) {
+            return;
+        }
+        calibration = new Thread(() -> {
+            try {
+                CipherSuite suite = calibrate();
+                fastest = suite;
+                done.accept(suite);
+            } catch (GeneralSecurityException | IOException e) {
+                // Nothing is kept, so the next run measures again; until then the default stays
+                System.out.println("Cipher calibration failed, new containers use " + fastest().getName() + ": " + e.getMessage());
+            }
+        }, "cipher-calibration");
+        calibration.setDaemon(true);
+        calibration.setPriority(Thread.MIN_PRIORITY);
+        calibration.start();
+    }
+
+    // Seals 1 MiB in rounds of small blocks with every suite the JDK provides, taking turns, and keeps the suite
+    // with the fastest round. The intrinsics only take over once the JIT has compiled a path, after some 30 MiB of
+    // sealing that the timings do not announce by levelling off, so every suite gets a fixed number of passes with
+    // room to spare rather than running until they look steady.
+    private static CipherSuite calibrate() throws GeneralSecurityException, IOException {
+        byte[] plain = new byte[CALIBRATION_BLOCK];
+        new Random(1).nextBytes(plain);
+        byte[] out = new byte[RecordCipher.maxRecordLength(plain.length)];
+        CipherSuite[] suites = values();
+        RecordCipher[] ciphers = new RecordCipher[suites.length];
+        long[] bestNanos = new long[suites.length];
+        SecretKey key = KeyManager.generateKey();
+        for (int i = 0; i < suites.length; i++) {
+            bestNanos[i] = Long.MAX_VALUE;
+            try {
+                ciphers[i] = new RecordCipher(key, suites[i]);
+                ciphers[i].seal(RecordCipher.KIND_DATA, null, plain, 0, plain.length, out);
+            } catch (IOException e) {
+                // The provider lacks this suite, it cannot be chosen for new containers here
+                ciphers[i] = null;
+            }
+        }
+        for (int pass = 0; pass < CALIBRATION_PASSES; pass++) {
+            for (int i = 0; i < suites.length; i++) {
+                if (ciphers[i] != null) {
+                    long start = System.nanoTime();
+                    for (int round = 0; round < CALIBRATION_ROUND; round++) {
+                        ciphers[i].seal(RecordCipher.KIND_DATA, null, plain, 0, plain.length, out);
+                    }
+                    bestNanos[i] = Math.min(bestNanos[i], System.nanoTime() - start);
+                }
+            }
+        }
+        CipherSuite best = AES_GCM;
+        for (int i = 0; i < suites.length; i++) {
+            if (bestNanos[i] < bestNanos[best.ordinal()]) {
+                best = suites[i];
+            }
+        }
+        return best;
+    }
+}
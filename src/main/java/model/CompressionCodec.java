@@ -0,0 +1,18 @@
+package model;
+
+import java.io.IOException;
+
+// Block compressor used for container chunks. The id is stored with every chunk, so a container can mix codecs
+// and readers pick the matching one per chunk. Implementations are shared between threads.
+public interface CompressionCodec {
+    byte getId();
+
+    String getName();
+
+    // Compresses src[srcOff, srcOff + srcLen) into dst and returns the compressed length, or -1 if it does not
+    // fit into dstLen bytes
+    int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen);
+
+    // Restores exactly dstLen bytes from src[srcOff, srcOff + srcLen) into dst
+    void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException;
+}
@@ -0,0 +1,48 @@
+package model;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+// The codecs a container can use, looked up by the id stored with each chunk or by name from the settings
+public final class CompressionCodecs {
+    public static final CompressionCodec STORED = new StoredCodec();
+    public static final CompressionCodec DEFLATE = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+    public static final CompressionCodec LZ = new LzCodec();
+    private static final Map<Integer, DeflateCodec> DEFLATE_LEVELS = new ConcurrentHashMap<>();
+
+    private CompressionCodecs() {
+    }
+
+    public static List<CompressionCodec> all() {
+        return List.of(STORED, DEFLATE, LZ);
+    }
+
+    // Reading does not depend on the level, so any deflate instance serves for it
+    public static CompressionCodec forId(byte id) throws IOException {
+        if (id == ChunkRef.CODEC_DEFLATE_DICTIONARY) {
+            throw new IOException("Compression codec " + id + " needs the container's dictionary");
+        }
+        for (CompressionCodec codec : all()) {
+            if (codec.getId() == id) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown compression codec " + id);
+    }
+
+    // Unknown names fall back to deflate; the level only applies to deflate, where level 0 means storing
+    public static CompressionCodec forName(String name, int level) {
+        String key = name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+        if (key.equals(LZ.getName())) {
+            return LZ;
+        }
+        if (key.equals(STORED.getName()) || level == Deflater.NO_COMPRESSION) {
+            return STORED;
+        }
+        return level == Deflater.DEFAULT_COMPRESSION ? DEFLATE : DEFLATE_LEVELS.computeIfAbsent(level, DeflateCodec::new);
+    }
+}
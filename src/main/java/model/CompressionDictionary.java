@@ -0,0 +1,126 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Trains a preset dictionary for deflate from sample files. Deflate refers back at most 32 KiB, but it loads the
+// whole dictionary again for every block, so for small chunks a few KiB give most of the gain at a fraction of
+// the cost. Segments of the samples are scored by how many samples share their 8-byte substrings, the best
+// are picked greedily while substrings already covered stop counting, and the most valuable segments go to the
+// end of the dictionary, where matches are closest to the data and cost the fewest bits.
+public final class CompressionDictionary {
+    public static final int MAX_SIZE = 32 * 1024;
+    public static final int DEFAULT_SIZE = 4 * 1024;
+    // Files and chunks up to this size are sampled and compressed against the dictionary
+    public static final int MAX_SAMPLE_SIZE = 64 * 1024;
+    public static final int MAX_SAMPLE_BYTES = 8 * 1024 * 1024;
+    private static final int MIN_SAMPLES = 16;
+    private static final int SEGMENT_LENGTH = 256;
+    private static final int K = 8;
+    private static final int HASH_LOG = 20;
+
+    private CompressionDictionary() {
+    }
+
+    // Returns null when there are too few samples to learn anything that generalises
+    public static byte[] train(List<byte[]> samples, int size) {
+        if (samples.size() < MIN_SAMPLES) {
+            return null;
+        }
+        // Substrings are counted once per sample, so one repetitive file cannot dominate the dictionary
+        int[] frequency = new int[1 << HASH_LOG];
+        int[] stamp = new int[1 << HASH_LOG];
+        int stampValue = 0;
+        for (byte[] sample : samples) {
+            stampValue++;
+            for (int i = 0; i + K <= sample.length; i++) {
+                int hash = hash(sample, i);
+                if (stamp[hash] != stampValue) {
+                    stamp[hash] = stampValue;
+                    frequency[hash]++;
+                }
+            }
+        }
+
+        PriorityQueue<Segment> candidates = new PriorityQueue<>((a, b) -> Long.compare(b.score, a.score));
+        for (byte[] sample : samples) {
+            for (int off = 0; off + K <= sample.length; off += SEGMENT_LENGTH) {
+                Segment segment = new Segment(sample, off, Math.min(SEGMENT_LENGTH, sample.length - off));
+                segment.score = score(segment, frequency, stamp, ++stampValue);
+                if (segment.score > 0) {
+                    candidates.add(segment);
+                }
+            }
+        }
+
+        // Scores only drop as substrings get covered, so a segment whose fresh score still leads is the best one
+        List<Segment> selected = new ArrayList<>();
+        int filled = 0;
+        while (filled < size && !candidates.isEmpty()) {
+            Segment best = candidates.poll();
+            long score = score(best, frequency, stamp, ++stampValue);
+            if (score <= 0) {
+                continue;
+            }
+            if (!candidates.isEmpty() && score < candidates.peek().score) {
+                best.score = score;
+                candidates.add(best);
+                continue;
+            }
+            int length = Math.min(best.length, size - filled);
+            selected.add(new Segment(best.sample, best.offset, length));
+            filled += length;
+            for (int i = best.offset; i + K <= best.offset + best.length; i++) {
+                frequency[hash(best.sample, i)] = 0;
+            }
+        }
+        if (selected.isEmpty()) {
+            return null;
+        }
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(filled);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            Segment segment = selected.get(i);
+            dictionary.write(segment.sample, segment.offset, segment.length);
+        }
+        return dictionary.toByteArray();
+    }
+
+    // Only substrings shared with other samples count, each once per segment
+    private static long score(Segment segment, int[] frequency, int[] stamp, int stampValue) {
+        long score = 0;
+        for (int i = segment.offset; i + K <= segment.offset + segment.length; i++) {
+            int hash = hash(segment.sample, i);
+            if (stamp[hash] != stampValue) {
+                stamp[hash] = stampValue;
+                if (frequency[hash] > 1) {
+                    score += frequency[hash];
+                }
+            }
+        }
+        return score;
+    }
+
+    private static int hash(byte[] data, int off) {
+        long value = 0;
+        for (int i = 0; i < K; i++) {
+            value = value << 8 | (data[off + i] & 0xFF);
+        }
+        return (int) ((value * 0x9E3779B97F4A7C15L) >>> (64 - HASH_LOG));
+    }
+
+    private static final class Segment {
+        private final byte[] sample;
+        private final int offset;
+        private final int length;
+        private long score;
+
+        private Segment(byte[] sample, int offset, int length) {
+            this.sample = sample;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
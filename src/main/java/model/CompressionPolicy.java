@@ -0,0 +1,61 @@
+package model;
+
+import java.util.Locale;
+import java.util.Set;
+
+// Decides per entry whether deflating is worth it. Media, archives and encrypted files hardly shrink, so their
+// chunks are stored as they are. Entries are judged by their extension and by the byte entropy of a few
+// samples from their first block; a known extension only needs the sample not to look clearly compressible.
+class CompressionPolicy {
+    private static final Set<String> INCOMPRESSIBLE_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "avif",
+            "mp4", "m4v", "mkv", "mov", "avi", "webm", "mp3", "m4a", "aac", "ogg", "opus", "flac",
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4", "jar", "apk",
+            "docx", "xlsx", "pptx", "odt", "epub", "gpg", "pgp", "enc", "ffc");
+    private static final int SAMPLES = 4;
+    private static final int SAMPLE_LENGTH = 4096;
+    // Bits per byte: random and compressed data is close to 8, text well below 6
+    private static final double INCOMPRESSIBLE_ENTROPY = 7.5;
+    private static final double COMPRESSIBLE_ENTROPY = 6.0;
+
+    private CompressionPolicy() {
+    }
+
+    static boolean shouldCompress(String entryPath, byte[] data, int length) {
+        if (length == 0) {
+            return false;
+        }
+        double entropy = sampleEntropy(data, length);
+        if (INCOMPRESSIBLE_EXTENSIONS.contains(extension(entryPath))) {
+            return entropy < COMPRESSIBLE_ENTROPY;
+        }
+        return entropy < INCOMPRESSIBLE_ENTROPY;
+    }
+
+    private static String extension(String entryPath) {
+        int dot = entryPath.lastIndexOf('.');
+        return dot < entryPath.lastIndexOf('/') + 1 ? "" : entryPath.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // Shannon entropy of samples spread over the block, so a header alone does not decide
+    private static double sampleEntropy(byte[] data, int length) {
+        int[] counts = new int[256];
+        int total = 0;
+        int stride = Math.max(SAMPLE_LENGTH, length / SAMPLES);
+        for (int start = 0; start < length; start += stride) {
+            int end = Math.min(length, start + SAMPLE_LENGTH);
+            for (int i = start; i < end; i++) {
+                counts[data[i] & 0xFF]++;
+            }
+            total += end - start;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+        return entropy;
+    }
+}
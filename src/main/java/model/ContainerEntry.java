@@ -0,0 +1,68 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// One file or directory listed in a container index. Paths are relative and always use '/' as separator.
+public class ContainerEntry {
+    private final String path;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+    private final int checksum;
+    private final List<ChunkRef> chunks;
+
+    public ContainerEntry(String path, boolean directory, long size, long lastModified, int checksum, List<ChunkRef> chunks) {
+        this.path = path;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.checksum = checksum;
+        this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+    }
+
+    public static ContainerEntry directory(String path, long lastModified) {
+        return new ContainerEntry(path, true, 0, lastModified, 0, List.of());
+    }
+
+    public ContainerEntry withPath(String newPath) {
+        return new ContainerEntry(newPath, directory, size, lastModified, checksum, chunks);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int getChecksum() {
+        return checksum;
+    }
+
+    public List<ChunkRef> getChunks() {
+        return chunks;
+    }
+
+    public long getStoredLength() {
+        long length = 0;
+        for (ChunkRef chunk : chunks) {
+            length += chunk.getStoredShare();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,225 @@
+package model;
+
+import javax.crypto.SecretKey;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// On-disk layout shared by the container readers and writers.
+// Version 1 containers have no header: the whole file is a single AES blob over a zip stream.
+// Version 2 containers start with a header followed by independently authenticated AES-GCM chunks of a zip stream.
+// Version 3 containers hold one sealed record per data chunk, an encrypted index of entries and a trailer pointing to it.
+// Version 4 adds a volume manifest to the index, so data records can live in separate volume files.
+// Version 5 records a keyed hash per chunk, so identical chunks are stored once and shared between entries.
+// Version 6 lets the trailer point at a journal of metadata changes that is replayed onto the last full index.
+// Version 7 allows chunk codecs other than stored and deflate.
+// Version 8 lets chunk references point at a slice of a record, so small files can share one solid block.
+// Version 9 adds an encrypted preset compression dictionary, referenced from the index, for small chunks.
+// Version 10 records the cipher suite of the records in a byte after the chunk size.
+// Version 11 seals the records with a data key of their own, kept wrapped by the user's key after the suite byte.
+// Version 12 replaces the wrapped key with a table of key slots, so the keys of several users open the container.
+// Version 13 gives every data record an id, named in the index and bound into the record's seal.
+final class ContainerFormat {
+    static final byte[] MAGIC = {'F', 'F', 'C', 'T'};
+    static final short VERSION_LEGACY = 1;
+    static final short VERSION_CHUNKED = 2;
+    static final short VERSION_INDEXED = 3;
+    static final short VERSION_MANIFEST = 4;
+    static final short VERSION_CHUNK_IDS = 5;
+    static final short VERSION_JOURNAL = 6;
+    static final short VERSION_CODECS = 7;
+    static final short VERSION_SOLID = 8;
+    static final short VERSION_DICTIONARY = 9;
+    static final short VERSION_SUITES = 10;
+    static final short VERSION_ENVELOPE = 11;
+    static final short VERSION_KEY_SLOTS = 12;
+    static final short VERSION_RECORD_IDS = 13;
+    static final short CURRENT_VERSION = VERSION_RECORD_IDS;
+    static final int HEADER_LENGTH = MAGIC.length + Short.BYTES + Integer.BYTES;
+    private static final int KEY_BLOCK_POSITION = HEADER_LENGTH + 1;
+
+    static final byte[] TRAILER_MAGIC = {'F', 'F', 'I', 'X'};
+    static final byte[] JOURNAL_TRAILER_MAGIC = {'F', 'F', 'J', 'R'};
+    static final int TRAILER_LENGTH = Long.BYTES + Integer.BYTES + TRAILER_MAGIC.length;
+
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    static final String CHUNK_TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+
+    private ContainerFormat() {
+    }
+
+    static short readVersion(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_LENGTH) {
+            return VERSION_LEGACY;
+        }
+        ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            return VERSION_LEGACY;
+        }
+        short version = header.getShort();
+        if (version < VERSION_CHUNKED || version > CURRENT_VERSION) {
+            throw new IOException("Unsupported container version: " + version);
+        }
+        return version;
+    }
+
+    static int readChunkSize(FileChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+        return header.getInt(MAGIC.length + Short.BYTES);
+    }
+
+    // Containers written before the suite was recorded all use AES-GCM
+    static CipherSuite readSuite(FileChannel channel, short version) throws IOException {
+        if (version < VERSION_SUITES) {
+            return CipherSuite.AES_GCM;
+        }
+        return CipherSuite.forId(readFully(channel, HEADER_LENGTH, 1).get());
+    }
+
+    // The key the records are sealed with. Containers written before envelope encryption use the user's key.
+    static SecretKey readDataKey(FileChannel channel, short version, SecretKey userKey) throws IOException {
+        if (version < VERSION_ENVELOPE) {
+            return userKey;
+        }
+        if (version < VERSION_KEY_SLOTS) {
+            return KeyWrap.unwrap(readFully(channel, KEY_BLOCK_POSITION, KeyWrap.WRAPPED_LENGTH).array(), userKey);
+        }
+        return readKeySlots(channel).open(userKey);
+    }
+
+    static KeySlots readKeySlots(FileChannel channel) throws IOException {
+        return new KeySlots(readFully(channel, KEY_BLOCK_POSITION, KeySlots.LENGTH).array());
+    }
+
+    // Replaces the key slots in place; the table has a fixed size, so nothing else in the file moves
+    static void writeKeySlots(FileChannel channel, KeySlots slots) throws IOException {
+        writeFully(channel, KEY_BLOCK_POSITION, ByteBuffer.wrap(slots.toBytes()));
+    }
+
+    // Where the first record starts
+    static int headerLength(short version) {
+        if (version < VERSION_SUITES) {
+            return HEADER_LENGTH;
+        }
+        if (version < VERSION_ENVELOPE) {
+            return HEADER_LENGTH + 1;
+        }
+        return KEY_BLOCK_POSITION + (version < VERSION_KEY_SLOTS ? KeyWrap.WRAPPED_LENGTH : KeySlots.LENGTH);
+    }
+
+    // Writes the header of the current version
+    static void writeHeader(FileChannel channel, int chunkSize, CipherSuite suite, KeySlots slots) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerLength(CURRENT_VERSION));
+        header.put(MAGIC).putShort(CURRENT_VERSION).putInt(chunkSize).put(suite.getId()).put(slots.toBytes());
+        writeFully(channel, 0, header.flip());
+    }
+
+    // The trailer is always the last bytes of the file and locates the sealed index or journal record
+    static void writeTrailer(FileChannel channel, long position, long indexOffset, int indexLength) throws IOException {
+        writeTrailer(channel, position, indexOffset, indexLength, RecordCipher.KIND_INDEX);
+    }
+
+    static void writeTrailer(FileChannel channel, long position, long recordOffset, int recordLength, byte kind) throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+        trailer.putLong(recordOffset).putInt(recordLength).put(kind == RecordCipher.KIND_JOURNAL ? JOURNAL_TRAILER_MAGIC : TRAILER_MAGIC).flip();
+        writeFully(channel, position, trailer);
+    }
+
+    // Locates the sealed index or journal record through the trailer at the end of the file. If an append was interrupted the file ends with an incomplete
+    // write, so the newest complete trailer before it is searched for instead.
+    static RecordRef readTrailer(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_LENGTH + TRAILER_LENGTH) {
+            throw new IOException("Container is truncated");
+        }
+        RecordRef index = checkTrailer(channel, size - TRAILER_LENGTH);
+        if (index != null) {
+            return index;
+        }
+        int window = 1024 * 1024;
+        for (long end = size; end > HEADER_LENGTH; end -= window - TRAILER_LENGTH) {
+            long start = Math.max(HEADER_LENGTH, end - window);
+            ByteBuffer block = readFully(channel, start, (int) (end - start));
+            for (int i = block.limit() - TRAILER_MAGIC.length; i >= 0; i--) {
+                if (matchesAt(block, i, TRAILER_MAGIC) || matchesAt(block, i, JOURNAL_TRAILER_MAGIC)) {
+                    index = checkTrailer(channel, start + i + TRAILER_MAGIC.length - TRAILER_LENGTH);
+                    if (index != null) {
+                        return index;
+                    }
+                }
+            }
+        }
+        throw new IOException("Container index is missing or damaged");
+    }
+
+    static long trailerEnd(RecordRef index) {
+        return index.getOffset() + index.getLength() + TRAILER_LENGTH;
+    }
+
+    private static RecordRef checkTrailer(FileChannel channel, long position) throws IOException {
+        if (position < HEADER_LENGTH) {
+            return null;
+        }
+        ByteBuffer trailer = readFully(channel, position, TRAILER_LENGTH);
+        long indexOffset = trailer.getLong();
+        int indexLength = trailer.getInt();
+        boolean journal = matchesAt(trailer, trailer.position(), JOURNAL_TRAILER_MAGIC);
+        if (!journal && !matchesAt(trailer, trailer.position(), TRAILER_MAGIC) || indexOffset < HEADER_LENGTH
+                || indexLength < Integer.BYTES || indexOffset + indexLength != position) {
+            return null;
+        }
+        // The index record starts with its own payload length, which must agree with the trailer
+        if (readFully(channel, indexOffset, Integer.BYTES).getInt() != indexLength - Integer.BYTES) {
+            return null;
+        }
+        return new RecordRef(indexOffset, indexLength, journal ? RecordCipher.KIND_JOURNAL : RecordCipher.KIND_INDEX);
+    }
+
+    private static boolean matchesAt(ByteBuffer buffer, int position, byte[] pattern) {
+        if (position < 0 || position + pattern.length > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (buffer.get(position + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int recordLength(int plainLength) {
+        return NONCE_LENGTH + plainLength + TAG_LENGTH;
+    }
+
+    // Binds every chunk to its position and marks the final one, so chunks cannot be reordered or truncated
+    static byte[] associatedData(long index, boolean last) {
+        return ByteBuffer.allocate(Long.BYTES + 1).putLong(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        return readFully(channel, position, ByteBuffer.allocate(length));
+    }
+
+    // Fills the buffer from its position to its limit and flips it
+    static ByteBuffer readFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new EOFException("Unexpected end of container at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    static void writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
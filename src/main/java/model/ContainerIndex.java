@@ -0,0 +1,203 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Table of contents of a container: every entry with its metadata and the records holding its data
+public class ContainerIndex {
+    private final TreeMap<String, ContainerEntry> entries = new TreeMap<>();
+    private VolumeManifest manifest;
+    private RecordRef dictionary;
+
+    // Null for containers that keep their data in the container file
+    public VolumeManifest getManifest() {
+        return manifest;
+    }
+
+    void setManifest(VolumeManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    // Sealed record of the preset compression dictionary, or null if the container has none
+    RecordRef getDictionary() {
+        return dictionary;
+    }
+
+    void setDictionary(RecordRef dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public Collection<ContainerEntry> getEntries() {
+        return entries.values();
+    }
+
+    public ContainerEntry get(String path) {
+        return entries.get(path);
+    }
+
+    public void put(ContainerEntry entry) {
+        entries.put(entry.getPath(), entry);
+    }
+
+    public ContainerEntry remove(String path) {
+        return entries.remove(path);
+    }
+
+    public boolean contains(String path) {
+        return entries.containsKey(path);
+    }
+
+    // Moves an entry and everything below it to a new path, replacing whatever was there
+    public void moveTree(String from, String to) {
+        List<ContainerEntry> moved = removeTree(from);
+        removeTree(to);
+        for (ContainerEntry entry : moved) {
+            put(entry.withPath(to + entry.getPath().substring(from.length())));
+        }
+    }
+
+    // Removes an entry and everything below it; '0' is the character right after '/'
+    public List<ContainerEntry> removeTree(String path) {
+        List<ContainerEntry> removed = new ArrayList<>();
+        ContainerEntry entry = entries.remove(path);
+        if (entry != null) {
+            removed.add(entry);
+        }
+        NavigableMap<String, ContainerEntry> children = entries.subMap(path + "/", true, path + "0", false);
+        removed.addAll(children.values());
+        children.clear();
+        return removed;
+    }
+
+    public ContainerIndex copy() {
+        ContainerIndex copy = new ContainerIndex();
+        copy.entries.putAll(entries);
+        copy.manifest = manifest;
+        copy.dictionary = dictionary;
+        return copy;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getTotalSize() {
+        long total = 0;
+        for (ContainerEntry entry : entries.values()) {
+            total += entry.getSize();
+        }
+        return total;
+    }
+
+    // Chunks shared between entries are only counted once
+    public long getStoredLength() {
+        Set<Long> offsets = new HashSet<>();
+        long total = 0;
+        for (ContainerEntry entry : entries.values()) {
+            for (ChunkRef chunk : entry.getChunks()) {
+                if (offsets.add(chunk.getOffset())) {
+                    total += chunk.getLength();
+                }
+            }
+        }
+        return total;
+    }
+
+    public static String toEntryPath(Path relativePath) {
+        List<String> names = new ArrayList<>();
+        for (Path name : relativePath) {
+            names.add(name.toString());
+        }
+        return String.join("/", names);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeBoolean(manifest != null);
+        if (manifest != null) {
+            manifest.write(out);
+        }
+        out.writeBoolean(dictionary != null);
+        if (dictionary != null) {
+            out.writeLong(dictionary.getOffset());
+            out.writeInt(dictionary.getLength());
+            out.writeInt(dictionary.getSize());
+        }
+        out.writeInt(entries.size());
+        for (ContainerEntry entry : entries.values()) {
+            out.writeUTF(entry.getPath());
+            out.writeBoolean(entry.isDirectory());
+            out.writeLong(entry.getSize());
+            out.writeLong(entry.getLastModified());
+            out.writeInt(entry.getChecksum());
+            out.writeInt(entry.getChunks().size());
+            for (ChunkRef chunk : entry.getChunks()) {
+                out.writeLong(chunk.getOffset());
+                out.writeInt(chunk.getLength());
+                out.writeInt(chunk.getSize());
+                out.writeByte(chunk.getCodec());
+                byte[] id = chunk.getId();
+                out.writeByte(id == null ? 0 : id.length);
+                if (id != null) {
+                    out.write(id);
+                }
+                out.writeBoolean(chunk.isSlice());
+                if (chunk.isSlice()) {
+                    out.writeInt(chunk.getSliceOffset());
+                    out.writeInt(chunk.getSliceLength());
+                }
+            }
+        }
+    }
+
+    static ContainerIndex read(DataInputStream in, short version) throws IOException {
+        ContainerIndex index = new ContainerIndex();
+        if (version >= ContainerFormat.VERSION_MANIFEST && in.readBoolean()) {
+            index.manifest = VolumeManifest.read(in);
+        }
+        if (version >= ContainerFormat.VERSION_DICTIONARY && in.readBoolean()) {
+            index.dictionary = new RecordRef(in.readLong(), in.readInt(), RecordCipher.KIND_DICTIONARY, in.readInt());
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String path = in.readUTF();
+            boolean directory = in.readBoolean();
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            int checksum = in.readInt();
+            int chunkCount = in.readInt();
+            List<ChunkRef> chunks = new ArrayList<>(chunkCount);
+            for (int c = 0; c < chunkCount; c++) {
+                long offset = in.readLong();
+                int length = in.readInt();
+                int chunkSize = in.readInt();
+                byte codec = in.readByte();
+                byte[] id = null;
+                if (version >= ContainerFormat.VERSION_CHUNK_IDS) {
+                    int idLength = in.readUnsignedByte();
+                    if (idLength > 0) {
+                        id = new byte[idLength];
+                        in.readFully(id);
+                    }
+                }
+                int sliceOffset = 0;
+                int sliceLength = chunkSize;
+                if (version >= ContainerFormat.VERSION_SOLID && in.readBoolean()) {
+                    sliceOffset = in.readInt();
+                    sliceLength = in.readInt();
+                }
+                chunks.add(new ChunkRef(offset, length, chunkSize, codec, id, sliceOffset, sliceLength));
+            }
+            index.put(new ContainerEntry(path, directory, size, lastModified, checksum, chunks));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,114 @@
+package model;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+// Settings used when a container is written
+public class ContainerOptions {
+    // The largest record of a chunk has to fit in one volume
+    public static final long MIN_VOLUME_SIZE = RecordCipher.maxRecordLength(ContainerFormat.DEFAULT_CHUNK_SIZE);
+
+    private long volumeSize;
+    private List<Path> volumeDirectories = new ArrayList<>();
+    private boolean deduplication;
+    private int compressionThreads;
+    private boolean solid;
+    private boolean dictionary;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private String compressionCodec = CompressionCodecs.DEFLATE.getName();
+    private String cipherSuite = "auto";
+    private int progressUpdateRate = ProgressTracker.DEFAULT_UPDATE_RATE;
+
+    // Zero keeps all data in the container file itself
+    public long getVolumeSize() {
+        return volumeSize;
+    }
+
+    public void setVolumeSize(long volumeSize) {
+        this.volumeSize = volumeSize;
+    }
+
+    // Directories new volumes are spread over in turn; empty means next to the container file
+    public List<Path> getVolumeDirectories() {
+        return volumeDirectories;
+    }
+
+    public void setVolumeDirectories(List<Path> volumeDirectories) {
+        this.volumeDirectories = new ArrayList<>(volumeDirectories);
+    }
+
+    // Content-defined chunks that are stored once however many files contain them
+    public boolean isDeduplication() {
+        return deduplication;
+    }
+
+    public void setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+    }
+
+    // Small files are packed into shared blocks that are compressed together
+    public boolean isSolid() {
+        return solid;
+    }
+
+    public void setSolid(boolean solid) {
+        this.solid = solid;
+    }
+
+    // Small chunks are compressed against a dictionary trained on the container's small files
+    public boolean isDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(boolean dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    // Threads that compress chunks in parallel; zero uses every available processor
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    // Deflater level for data that is worth compressing, from 0 (store everything) to 9
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    // "deflate", "lz" for speed over ratio, or "stored" to keep data uncompressed
+    public void setCompressionCodec(String compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    public CompressionCodec getCompressionCodec() {
+        return CompressionCodecs.forName(compressionCodec, compressionLevel);
+    }
+
+    // Suite for new containers: "aes-gcm", "chacha20-poly1305", "aes-ctr-hmac", or "auto" for the one calibrated as
+    // the fastest on this host. Existing containers keep the suite they were created with.
+    public void setCipherSuite(String cipherSuite) {
+        this.cipherSuite = cipherSuite;
+    }
+
+    public CipherSuite getCipherSuite() {
+        return CipherSuite.forName(cipherSuite);
+    }
+
+    // Progress reports per second at most, however fast the work goes
+    public int getProgressUpdateRate() {
+        return progressUpdateRate;
+    }
+
+    public void setProgressUpdateRate(int progressUpdateRate) {
+        this.progressUpdateRate = progressUpdateRate;
+    }
+}
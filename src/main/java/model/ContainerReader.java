@@ -0,0 +1,234 @@
+package model;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+// Reads the index of an indexed container on its own and decrypts entries only when asked to
+public class ContainerReader implements Closeable {
+    private static final int READ_AHEAD = Runtime.getRuntime().availableProcessors();
+    private static final int BLOCK_CACHE_SIZE = 4;
+
+    private final FileChannel channel;
+    private final SecretKey dataKey;
+    private final RecordCipher recordCipher;
+    private final boolean recordIds;
+    private final ContainerIndex index;
+    private final ContainerStorage storage;
+    private final byte[] dictionary;
+    private final DeflateCodec dictionaryCodec;
+    private final Map<Long, byte[]> blockCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > BLOCK_CACHE_SIZE;
+        }
+    };
+
+    public ContainerReader(Path file, SecretKey secretKey) throws IOException {
+        this(file, secretKey, null);
+    }
+
+    // Reuses an index that was already read, so single entries can be decrypted without parsing it again
+    public ContainerReader(Path file, SecretKey secretKey, ContainerIndex index) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            short version = ContainerFormat.readVersion(channel);
+            this.dataKey = ContainerFormat.readDataKey(channel, version, secretKey);
+            this.recordCipher = new RecordCipher(dataKey, ContainerFormat.readSuite(channel, version));
+            this.recordIds = version >= ContainerFormat.VERSION_RECORD_IDS;
+            this.index = index != null ? index : readIndex(version);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.storage = ContainerStorage.forReading(channel, file, this.index.getManifest());
+        try {
+            this.dictionary = readDictionary();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        this.dictionaryCodec = dictionary != null ? new DeflateCodec(Deflater.DEFAULT_COMPRESSION, dictionary) : null;
+    }
+
+    private byte[] readDictionary() throws IOException {
+        RecordRef ref = index.getDictionary();
+        return ref != null ? recordCipher.open(ref.getKind(), null, storage.read(ref.getOffset(), ref.getLength()), ref.getOffset()) : null;
+    }
+
+    private ContainerIndex readIndex(short version) throws IOException {
+        if (version < ContainerFormat.VERSION_INDEXED) {
+            throw new IOException("Container format " + version + " has no index");
+        }
+        // Walk back through the journal to the last full index, then replay the journal onto it
+        RecordRef indexRef = ContainerFormat.readTrailer(channel);
+        Deque<IndexJournal> journals = new ArrayDeque<>();
+        while (indexRef.getKind() == RecordCipher.KIND_JOURNAL) {
+            IndexJournal journal = readJournal(channel, recordCipher, indexRef);
+            journals.push(journal);
+            indexRef = journal.getPrevious();
+        }
+        ByteBuffer record = ContainerFormat.readFully(channel, indexRef.getOffset(), indexRef.getLength());
+        byte[] indexPlain = recordCipher.open(RecordCipher.KIND_INDEX, null, record, indexRef.getOffset());
+        ContainerIndex index;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(indexPlain)))) {
+            index = ContainerIndex.read(in, version);
+        }
+        while (!journals.isEmpty()) {
+            journals.pop().applyTo(index);
+        }
+        return index;
+    }
+
+    static IndexJournal readJournal(FileChannel channel, RecordCipher recordCipher, RecordRef journalRef) throws IOException {
+        ByteBuffer record = ContainerFormat.readFully(channel, journalRef.getOffset(), journalRef.getLength());
+        return IndexJournal.fromBytes(recordCipher.open(RecordCipher.KIND_JOURNAL, null, record, journalRef.getOffset()));
+    }
+
+    public ContainerIndex getIndex() {
+        return index;
+    }
+
+    // The key the records of this container are sealed with, which a rewrite keeps for the records it copies
+    SecretKey getDataKey() {
+        return dataKey;
+    }
+
+    CipherSuite getCipherSuite() {
+        return recordCipher.getSuite();
+    }
+
+    // Whether the data records are sealed with their record ids; older records are sealed again when copied
+    boolean hasRecordIds() {
+        return recordIds;
+    }
+
+    // The preset compression dictionary of the container, or null if it has none
+    byte[] getDictionary() {
+        return dictionary;
+    }
+
+    // Chunks are read and decrypted ahead in parallel, which also spreads the reads over the volumes they live on
+    public void readEntry(ContainerEntry entry, OutputStream out) throws IOException {
+        CRC32C checksum = new CRC32C();
+        List<ChunkRef> chunks = entry.getChunks();
+        Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                while (next < chunks.size() && pending.size() < READ_AHEAD) {
+                    ChunkRef chunk = chunks.get(next++);
+                    pending.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return readData(chunk);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+                }
+                byte[] data = join(pending.poll());
+                checksum.update(data);
+                out.write(data);
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(false));
+        }
+        if ((int) checksum.getValue() != entry.getChecksum()) {
+            throw new IOException("Checksum mismatch for " + entry.getPath());
+        }
+    }
+
+    // Solid blocks are shared by many small entries. The last few decoded blocks are kept, so extracting the
+    // entries of a block one after another decrypts and decompresses it only once.
+    private byte[] readData(ChunkRef chunk) throws IOException {
+        if (!chunk.isSlice()) {
+            return readChunk(chunk);
+        }
+        byte[] block;
+        synchronized (blockCache) {
+            block = blockCache.get(chunk.getOffset());
+        }
+        if (block == null) {
+            block = readChunk(chunk);
+            synchronized (blockCache) {
+                blockCache.put(chunk.getOffset(), block);
+            }
+        }
+        if (chunk.getSliceOffset() < 0 || chunk.getSliceLength() > block.length - chunk.getSliceOffset()) {
+            throw new IOException("Slice of block at offset " + chunk.getOffset() + " is out of range");
+        }
+        return Arrays.copyOfRange(block, chunk.getSliceOffset(), chunk.getSliceOffset() + chunk.getSliceLength());
+    }
+
+    // The sealed record is read into this thread's scratch buffer and, when compressed, opened into the other one,
+    // so the array handed back is the only allocation per chunk
+    byte[] readChunk(ChunkRef chunk) throws IOException {
+        ByteBuffer record = storage.read(chunk.getOffset(), CryptoEngine.buffer(CryptoEngine.SEALED, chunk.getLength()));
+        byte[] id = recordIds ? chunk.getId() : null;
+        if (recordIds && (id == null || id.length != RecordCipher.RECORD_ID_LENGTH)) {
+            throw new IOException("Chunk at offset " + chunk.getOffset() + " has no valid record id");
+        }
+        if (chunk.getCodec() == ChunkRef.CODEC_STORED) {
+            return recordCipher.open(RecordCipher.KIND_DATA, id, record, chunk.getOffset());
+        }
+        ByteBuffer stored = CryptoEngine.buffer(CryptoEngine.PLAIN, recordCipher.plainLength(record, chunk.getOffset()));
+        int storedLength = recordCipher.open(RecordCipher.KIND_DATA, id, record, chunk.getOffset(), stored);
+        byte[] data = new byte[chunk.getSize()];
+        try {
+            CompressionCodec codec = chunk.getCodec() == ChunkRef.CODEC_DEFLATE_DICTIONARY && dictionaryCodec != null
+                    ? dictionaryCodec : CompressionCodecs.forId(chunk.getCodec());
+            codec.decompress(stored.array(), stored.arrayOffset(), storedLength, data, 0, data.length);
+        } catch (IOException e) {
+            throw new IOException("Chunk at offset " + chunk.getOffset() + " is corrupt", e);
+        }
+        return data;
+    }
+
+    // The record exactly as it is stored, still encrypted
+    ByteBuffer readSealed(ChunkRef chunk) throws IOException {
+        return storage.read(chunk.getOffset(), chunk.getLength());
+    }
+
+    List<Path> getVolumePaths() {
+        return storage.getVolumePaths();
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            storage.close();
+        } finally {
+            channel.close();
+        }
+    }
+}
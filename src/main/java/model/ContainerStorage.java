@@ -0,0 +1,247 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Where the sealed data records of a container are kept. Single-file containers keep them in the
+// container file itself, addressed by file offset. Multi-volume containers spread them over
+// fixed-size volume files and keep only the header, index and trailer in the container file.
+class ContainerStorage implements Closeable {
+    // Forcing blocks on the disk, so it gets threads of its own rather than the common pool the readers decrypt on
+    private static final ExecutorService FLUSHERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "volume-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FileChannel mainChannel;
+    private final Path containerFile;
+    private final boolean writable;
+    private final long volumeSize;
+    private final String generation;
+    private final List<String> volumes;
+    private final List<Path> volumeDirectories;
+    private final Map<Integer, FileChannel> volumeChannels = new ConcurrentHashMap<>();
+    private final Set<Integer> touchedVolumes = new HashSet<>();
+    private final int existingVolumes;
+    private volatile boolean discarded;
+    private long dataEnd;
+    private long mainPosition;
+
+    private ContainerStorage(FileChannel mainChannel, Path containerFile, boolean writable, VolumeManifest manifest,
+                             List<Path> volumeDirectories, long mainPosition) {
+        this.mainChannel = mainChannel;
+        this.containerFile = containerFile;
+        this.writable = writable;
+        this.volumeSize = manifest == null ? 0 : manifest.getVolumeSize();
+        this.generation = manifest == null ? null : manifest.getGeneration();
+        this.volumes = manifest == null ? new ArrayList<>() : new ArrayList<>(manifest.getVolumes());
+        this.existingVolumes = volumes.size();
+        this.volumeDirectories = volumeDirectories;
+        this.dataEnd = manifest == null ? mainPosition : manifest.getDataEnd();
+        this.mainPosition = mainPosition;
+    }
+
+    static ContainerStorage forReading(FileChannel mainChannel, Path containerFile, VolumeManifest manifest) {
+        return new ContainerStorage(mainChannel, containerFile, false, manifest, List.of(), 0);
+    }
+
+    // Continues writing after the given position of the container file, in the layout the manifest describes
+    static ContainerStorage forAppending(FileChannel mainChannel, Path containerFile, VolumeManifest manifest,
+                                         List<Path> volumeDirectories, long mainPosition) {
+        return new ContainerStorage(mainChannel, containerFile, true, manifest, volumeDirectories, mainPosition);
+    }
+
+    // Starts a new container; a volume size of zero keeps the data in the container file. Volumes too small for
+    // a full chunk record are made large enough for one.
+    static ContainerStorage create(FileChannel mainChannel, Path containerFile, long volumeSize, List<Path> volumeDirectories) {
+        VolumeManifest manifest = volumeSize <= 0 ? null
+                : new VolumeManifest(Math.max(volumeSize, ContainerOptions.MIN_VOLUME_SIZE), UUID.randomUUID().toString().substring(0, 8), List.of(), 0);
+        return new ContainerStorage(mainChannel, containerFile, true, manifest, volumeDirectories,
+                ContainerFormat.headerLength(ContainerFormat.CURRENT_VERSION));
+    }
+
+    boolean isMultiVolume() {
+        return volumeSize > 0;
+    }
+
+    VolumeManifest getManifest() {
+        return isMultiVolume() ? new VolumeManifest(volumeSize, generation, volumes, dataEnd) : null;
+    }
+
+    ByteBuffer read(long address, int length) throws IOException {
+        return read(address, ByteBuffer.allocate(length));
+    }
+
+    // Reads as many bytes as the buffer has room for, into the buffer, which may be direct
+    ByteBuffer read(long address, ByteBuffer target) throws IOException {
+        if (!isMultiVolume()) {
+            return ContainerFormat.readFully(mainChannel, address, target);
+        }
+        return ContainerFormat.readFully(volumeChannel((int) (address / volumeSize)), address % volumeSize, target);
+    }
+
+    long append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (!isMultiVolume()) {
+            long address = mainPosition;
+            ContainerFormat.writeFully(mainChannel, address, record);
+            mainPosition += length;
+            return address;
+        }
+        if (length > volumeSize) {
+            throw new IOException("Record of " + length + " bytes does not fit in a volume of " + volumeSize + " bytes");
+        }
+        long offset = dataEnd % volumeSize;
+        if (offset > 0 && offset + length > volumeSize) {
+            dataEnd += volumeSize - offset;
+        }
+        long address = dataEnd;
+        int volume = (int) (address / volumeSize);
+        ContainerFormat.writeFully(volumeChannel(volume), address % volumeSize, record);
+        touchedVolumes.add(volume);
+        dataEnd += length;
+        return address;
+    }
+
+    // Writes the sealed index and the trailer pointing to it at the end of the container file, then flushes everything
+    void commit(ByteBuffer indexRecord) throws IOException {
+        long indexOffset = mainPosition;
+        int indexLength = indexRecord.remaining();
+        ContainerFormat.writeFully(mainChannel, indexOffset, indexRecord);
+        ContainerFormat.writeTrailer(mainChannel, indexOffset + indexLength, indexOffset, indexLength);
+        mainPosition = indexOffset + indexLength + ContainerFormat.TRAILER_LENGTH;
+        mainChannel.truncate(mainPosition);
+        force();
+    }
+
+    // Total bytes on disk, used to decide when dead records should be compacted away
+    long getStoredSize() throws IOException {
+        long size = mainChannel.size();
+        for (int volume = 0; volume < volumes.size(); volume++) {
+            Path path = containerFile.resolveSibling(volumes.get(volume));
+            if (Files.exists(path)) {
+                size += Files.size(path);
+            }
+        }
+        return size;
+    }
+
+    List<Path> getVolumePaths() {
+        List<Path> paths = new ArrayList<>();
+        for (String volume : volumes) {
+            paths.add(containerFile.resolveSibling(volume));
+        }
+        return paths;
+    }
+
+    // Closes and deletes the volumes this storage started, for a write that is abandoned before its index is
+    // committed; volumes that were there before are left as they are. Writes still under way fail from here on
+    // rather than create the volumes again.
+    void discard() throws IOException {
+        discarded = true;
+        synchronized (volumeChannels) {
+            close();
+        }
+        for (int volume = existingVolumes; volume < volumes.size(); volume++) {
+            Files.deleteIfExists(containerFile.resolveSibling(volumes.get(volume)));
+        }
+    }
+
+    // Flushes the container file and every volume written to, with the volumes forced in parallel first so the
+    // index is never on disk ahead of the records it points to
+    void force() throws IOException {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (Integer volume : touchedVolumes) {
+            FileChannel channel = volumeChannels.get(volume);
+            pending.add(CompletableFuture.runAsync(() -> {
+                try {
+                    channel.force(true);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, FLUSHERS));
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+        mainChannel.force(true);
+    }
+
+    private FileChannel volumeChannel(int volume) throws IOException {
+        FileChannel channel = volumeChannels.get(volume);
+        if (channel != null) {
+            return channel;
+        }
+        synchronized (volumeChannels) {
+            if (discarded) {
+                throw new IOException("Container write was abandoned");
+            }
+            channel = volumeChannels.get(volume);
+            if (channel == null) {
+                while (writable && volumes.size() <= volume) {
+                    volumes.add(newVolumeName(volumes.size()));
+                }
+                if (volume >= volumes.size()) {
+                    throw new IOException("Container volume " + volume + " is not listed in its manifest");
+                }
+                Path path = containerFile.resolveSibling(volumes.get(volume));
+                channel = writable
+                        ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                        : FileChannel.open(path, StandardOpenOption.READ);
+                volumeChannels.put(volume, channel);
+            }
+            return channel;
+        }
+    }
+
+    // Volumes go round-robin over the configured directories, next to the container file by default. A full rewrite
+    // writes every record to a new address while the previous container stays valid until the side file replaces
+    // it, so its volumes carry a generation of their own and the previous ones are deleted only after the switch.
+    // Incremental saves keep the generation and append to the volumes that are there.
+    private String newVolumeName(int volume) throws IOException {
+        String name = String.format("%s.%s.%04d.vol", containerFile.getFileName(), generation, volume);
+        if (volumeDirectories.isEmpty()) {
+            return name;
+        }
+        Path directory = volumeDirectories.get(volume % volumeDirectories.size()).toAbsolutePath();
+        Files.createDirectories(directory);
+        Path path = directory.resolve(name);
+        Path parent = containerFile.toAbsolutePath().getParent();
+        return path.startsWith(parent) ? parent.relativize(path).toString() : path.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : volumeChannels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        volumeChannels.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,554 @@
+package model;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+import java.util.zip.DeflaterOutputStream;
+
+// Appends sealed data records to an indexed container and finishes it with the encrypted index and trailer.
+// With deduplication, chunk boundaries follow the content and every chunk is named by a keyed hash of its
+// plaintext; a chunk whose hash is already in the container is referenced instead of written again.
+//
+// New files go through a pipeline: the calling thread reads and chunks them, and separate threads compress,
+// encrypt and append the chunks. The stages are connected by bounded queues and take their buffers from
+// fixed pools, so a slow stage holds the faster ones back instead of letting buffers pile up. Chunks are
+// compressed independently, so the compress stage spreads them over a shared ForkJoin pool and the encrypt
+// stage picks the results up in their original order.
+//
+// In solid mode, small compressible files are packed together into blocks of up to one chunk, which compress
+// far better than each file on its own. Their entries point at a slice of the block, and as no file spans two
+// blocks, reading one of them never decodes more than a single block.
+//
+// A container can hold a preset dictionary trained on its small files. Small chunks are deflated against it,
+// which lets even a file of a few hundred bytes refer to the structure it shares with the others.
+class ContainerWriter implements Closeable {
+    private static final String ID_ALGORITHM = "HmacSHA256";
+    private static final byte[] ID_KEY_LABEL = "FileFortress chunk id".getBytes();
+    private static final int PIPELINE_DEPTH = 4;
+    // Files of up to this fraction of a chunk are packed into solid blocks
+    private static final int SOLID_FILE_FRACTION = 16;
+    private static final Job END = new Job(null, 0, null);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static ForkJoinPool compressionPool;
+    private static final Map<ForkJoinPool, Integer> compressionPoolUsers = new HashMap<>();
+
+    private final ContainerStorage storage;
+    private final RecordCipher recordCipher;
+    private final ForkJoinPool compressors;
+    private final CompressionCodec codec;
+    private final int solidThreshold;
+    private byte[] solidBlock;
+    private int solidFilled;
+    private CompletableFuture<ChunkRef> solidResult;
+    private byte[] dictionary;
+    private RecordRef dictionaryRef;
+    private DeflateCodec dictionaryCodec;
+    private final BufferPool plainPool;
+    private final BufferPool compressedPool;
+    private final BufferPool recordPool;
+    private final BlockingQueue<Job> compressQueue = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+    private final BlockingQueue<Job> encryptQueue;
+    private final BlockingQueue<Job> writeQueue = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+    private final List<Thread> stages = new ArrayList<>();
+    private final ContentDefinedChunker chunker;
+    private final Mac idMac;
+    private final Map<ByteBuffer, CompletableFuture<ChunkRef>> knownChunks = new HashMap<>();
+    private final Map<Long, ChunkRef> copiedChunks = new HashMap<>();
+    private final SaveStatistics statistics = new SaveStatistics();
+    private ProgressTracker progress;
+    private volatile Throwable failure;
+    private CompletableFuture<ChunkRef> lastWrite;
+
+    ContainerWriter(ContainerStorage storage, SecretKey secretKey, int chunkSize) throws IOException {
+        this(storage, secretKey, chunkSize, new ContainerOptions(), CipherSuite.AES_GCM);
+    }
+
+    ContainerWriter(ContainerStorage storage, SecretKey secretKey, int chunkSize, ContainerOptions options, CipherSuite suite) throws IOException {
+        this.storage = storage;
+        this.codec = options.getCompressionCodec();
+        this.solidThreshold = options.isSolid() ? chunkSize / SOLID_FILE_FRACTION : 0;
+        this.recordCipher = new RecordCipher(secretKey, suite);
+        this.chunker = options.isDeduplication() ? new ContentDefinedChunker(chunkSize) : null;
+        this.idMac = options.isDeduplication() ? createIdMac(secretKey) : null;
+        // Taken last, as close() gives it back
+        this.compressors = compressionPool(options.getCompressionThreads());
+        // Enough chunks are in compression at once to keep every compression thread busy, and every other
+        // stage can hold a queue's worth of chunks plus the one it is working on
+        int compressing = Math.max(PIPELINE_DEPTH, 2 * compressors.getParallelism());
+        this.encryptQueue = new ArrayBlockingQueue<>(compressing);
+        this.plainPool = new BufferPool(chunkSize, 2 * (PIPELINE_DEPTH + 1) + compressing + 4);
+        this.compressedPool = new BufferPool(chunkSize, compressing + 2);
+        this.recordPool = new BufferPool(RecordCipher.maxRecordLength(chunkSize), PIPELINE_DEPTH + 2);
+        startStage("container-compress", compressQueue, this::compress, encryptQueue);
+        startStage("container-encrypt", encryptQueue, this::encrypt, writeQueue);
+        startStage("container-write", writeQueue, this::write, null);
+    }
+
+    // All writers share one pool; zero threads means one per available processor. A pool that is replaced after
+    // the setting changed is shut down as soon as the last writer still using it is closed.
+    private static synchronized ForkJoinPool compressionPool(int threads) {
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (compressionPool == null || compressionPool.getParallelism() != parallelism) {
+            ForkJoinPool replaced = compressionPool;
+            compressionPool = new ForkJoinPool(parallelism);
+            if (replaced != null && !compressionPoolUsers.containsKey(replaced)) {
+                replaced.shutdown();
+            }
+        }
+        compressionPoolUsers.merge(compressionPool, 1, Integer::sum);
+        return compressionPool;
+    }
+
+    private static synchronized void releaseCompressionPool(ForkJoinPool pool) {
+        if (compressionPoolUsers.merge(pool, -1, Integer::sum) == 0) {
+            compressionPoolUsers.remove(pool);
+            if (pool != compressionPool) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // Chunk ids are keyed with a key derived from the container key, so equal plaintext cannot be
+    // confirmed from the index by anyone who does not hold the key
+    private static Mac createIdMac(SecretKey secretKey) throws IOException {
+        try {
+            Mac derive = Mac.getInstance(ID_ALGORITHM);
+            derive.init(new SecretKeySpec(secretKey.getEncoded(), ID_ALGORITHM));
+            Mac mac = Mac.getInstance(ID_ALGORITHM);
+            mac.init(new SecretKeySpec(derive.doFinal(ID_KEY_LABEL), ID_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to derive the chunk id key", e);
+        }
+    }
+
+    CipherSuite getCipherSuite() {
+        return recordCipher.getSuite();
+    }
+
+    // Receives the bytes of every file as it is read; copied entries are counted by the caller
+    void setProgress(ProgressTracker progress) {
+        this.progress = progress;
+    }
+
+    SaveStatistics getStatistics() {
+        return statistics;
+    }
+
+    // Makes the chunks already stored in this container available for deduplication when appending to it
+    void registerChunks(ContainerIndex index) {
+        if (idMac == null) {
+            return;
+        }
+        for (ContainerEntry entry : index.getEntries()) {
+            for (ChunkRef chunk : entry.getChunks()) {
+                if (chunk.getId() != null) {
+                    knownChunks.putIfAbsent(ByteBuffer.wrap(chunk.getId()), CompletableFuture.completedFuture(chunk.slice(0, chunk.getSize())));
+                }
+            }
+        }
+    }
+
+    // Small chunks are compressed against this dictionary from now on. A dictionary that is already stored in the
+    // container being appended to is referenced again, any other one is sealed into a record of its own.
+    void setDictionary(byte[] dictionary, RecordRef stored) throws IOException {
+        flush();
+        if (stored == null) {
+            byte[] record = new byte[RecordCipher.maxRecordLength(dictionary.length)];
+            int length = recordCipher.seal(RecordCipher.KIND_DICTIONARY, null, dictionary, 0, dictionary.length, record);
+            stored = new RecordRef(storage.append(ByteBuffer.wrap(record, 0, length)), length, RecordCipher.KIND_DICTIONARY, dictionary.length);
+            statistics.addStored(length);
+        }
+        this.dictionary = dictionary;
+        this.dictionaryRef = stored;
+        // The dictionary is made for deflate; other codecs keep compressing small chunks on their own
+        this.dictionaryCodec = codec instanceof DeflateCodec deflate ? new DeflateCodec(deflate.getLevel(), dictionary) : null;
+    }
+
+    // Reads and chunks the file on the calling thread and queues its chunks; the entry is complete once the
+    // last of them has been written
+    CompletableFuture<ContainerEntry> writeFile(String entryPath, Path source) throws IOException {
+        List<CompletableFuture<ChunkRef>> chunks = new ArrayList<>();
+        CRC32C checksum = new CRC32C();
+        long size = 0;
+        long lastModified = Files.getLastModifiedTime(source).toMillis();
+        boolean compress = true;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            // Without deduplication every chunk is a full buffer. With it, whatever follows the cut point is
+            // carried over to the front of the next buffer, which is then topped up from the file.
+            byte[] buffer = plainPool.acquire();
+            int filled = 0;
+            boolean end = false;
+            while (true) {
+                if (progress != null) {
+                    progress.checkCancelled();
+                }
+                if (!end) {
+                    filled += readFully(in, buffer, filled);
+                    end = filled < buffer.length;
+                    if (size == 0) {
+                        compress = codec.getId() != ChunkRef.CODEC_STORED && CompressionPolicy.shouldCompress(entryPath, buffer, filled);
+                        if (compress && end && filled > 0 && filled <= solidThreshold) {
+                            checksum.update(buffer, 0, filled);
+                            if (progress != null) {
+                                progress.addBytes(filled);
+                            }
+                            CompletableFuture<ContainerEntry> entry = pack(entryPath, buffer, filled, lastModified, (int) checksum.getValue());
+                            plainPool.release(buffer);
+                            return entry;
+                        }
+                    }
+                }
+                if (filled == 0) {
+                    plainPool.release(buffer);
+                    break;
+                }
+                int length = chunker == null ? filled : chunker.nextChunkLength(buffer, 0, filled);
+                checksum.update(buffer, 0, length);
+                size += length;
+                if (progress != null) {
+                    progress.addBytes(length);
+                }
+                byte[] next = plainPool.acquire();
+                System.arraycopy(buffer, length, next, 0, filled - length);
+                chunks.add(submitChunk(buffer, length, compress));
+                buffer = next;
+                filled -= length;
+            }
+        }
+        if (!compress && size > 0) {
+            statistics.addUncompressed(entryPath, size);
+        }
+        long entrySize = size;
+        int entryChecksum = (int) checksum.getValue();
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<ChunkRef> refs = new ArrayList<>(chunks.size());
+            for (CompletableFuture<ChunkRef> chunk : chunks) {
+                refs.add(chunk.join());
+            }
+            return new ContainerEntry(entryPath, false, entrySize, lastModified, entryChecksum, refs);
+        });
+    }
+
+    // Adds a small file to the open solid block, sending the block off first when the file does not fit anymore
+    private CompletableFuture<ContainerEntry> pack(String entryPath, byte[] data, int length, long lastModified, int checksum) throws IOException {
+        if (solidBlock != null && solidFilled + length > solidBlock.length) {
+            flushBlock();
+        }
+        if (solidBlock == null) {
+            solidBlock = plainPool.acquire();
+            solidResult = new CompletableFuture<>();
+        }
+        System.arraycopy(data, 0, solidBlock, solidFilled, length);
+        int sliceOffset = solidFilled;
+        solidFilled += length;
+        return solidResult.thenApply(block -> new ContainerEntry(entryPath, false, length, lastModified, checksum,
+                List.of(block.slice(sliceOffset, length))));
+    }
+
+    private void flushBlock() throws IOException {
+        if (solidBlock == null) {
+            return;
+        }
+        byte[] block = solidBlock;
+        CompletableFuture<ChunkRef> result = solidResult;
+        solidBlock = null;
+        solidResult = null;
+        try {
+            submitChunk(block, solidFilled, true).whenComplete((chunk, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(chunk);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+            throw e;
+        } finally {
+            solidFilled = 0;
+        }
+    }
+
+    private static int readFully(FileChannel in, byte[] buffer, int offset) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, offset, buffer.length - offset);
+        while (target.hasRemaining() && in.read(target) != -1) {
+            // Keep reading until the buffer is full or the file ends
+        }
+        return target.position() - offset;
+    }
+
+    // Takes ownership of the plain buffer. Chunks that are already stored, or on their way, are not queued again.
+    private CompletableFuture<ChunkRef> submitChunk(byte[] plain, int length, boolean compress) throws IOException {
+        if (failure != null) {
+            plainPool.release(plain);
+            throw new IOException("Unable to write container", failure);
+        }
+        statistics.addRead(length);
+        byte[] id;
+        if (idMac == null) {
+            id = new byte[RecordCipher.RECORD_ID_LENGTH];
+            RANDOM.nextBytes(id);
+        } else {
+            idMac.update(plain, 0, length);
+            id = idMac.doFinal();
+            CompletableFuture<ChunkRef> known = knownChunks.get(ByteBuffer.wrap(id));
+            if (known != null) {
+                plainPool.release(plain);
+                statistics.addDeduplicated(length);
+                return known;
+            }
+        }
+        Job job = new Job(plain, length, id);
+        job.compress = compress;
+        if (idMac != null) {
+            knownChunks.put(ByteBuffer.wrap(id), job.result);
+        }
+        put(compressQueue, job);
+        lastWrite = job.result;
+        return job.result;
+    }
+
+    // The output buffer is taken here, so waiting for one holds the stage back rather than a pool thread
+    private void compress(Job job) throws IOException {
+        if (!job.compress) {
+            job.codec = ChunkRef.CODEC_STORED;
+            job.compression = CompletableFuture.completedFuture(null);
+            return;
+        }
+        byte[] compressed = compressedPool.acquire();
+        job.compressed = compressed;
+        job.compression = CompletableFuture.runAsync(() -> compressChunk(job, compressed), compressors);
+    }
+
+    // Each chunk is compressed on its own; data that does not shrink is kept as is
+    private void compressChunk(Job job, byte[] compressed) {
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        CompressionCodec chunkCodec = dictionaryCodec != null && job.length <= CompressionDictionary.MAX_SAMPLE_SIZE ? dictionaryCodec : codec;
+        int compressedLength = chunkCodec.compress(job.plain, 0, job.length, compressed, 0, compressed.length);
+        statistics.addCompressed(job.length, THREADS.getCurrentThreadCpuTime() - cpuStart);
+        if (compressedLength < 0 || compressedLength >= job.length) {
+            job.codec = ChunkRef.CODEC_STORED;
+        } else {
+            job.compressedLength = compressedLength;
+            job.codec = chunkCodec.getId();
+        }
+    }
+
+    private void encrypt(Job job) throws IOException {
+        join(job.compression);
+        job.record = recordPool.acquire();
+        job.recordLength = job.codec == ChunkRef.CODEC_STORED
+                ? recordCipher.seal(RecordCipher.KIND_DATA, job.id, job.plain, 0, job.length, job.record)
+                : recordCipher.seal(RecordCipher.KIND_DATA, job.id, job.compressed, 0, job.compressedLength, job.record);
+        releaseInput(job);
+    }
+
+    private void write(Job job) throws IOException {
+        long address = storage.append(ByteBuffer.wrap(job.record, 0, job.recordLength));
+        statistics.addStored(job.recordLength);
+        recordPool.release(job.record);
+        job.record = null;
+        job.result.complete(new ChunkRef(address, job.recordLength, job.length, job.codec, job.id));
+    }
+
+    private void releaseInput(Job job) {
+        if (job.compression != null && !job.compression.isDone()) {
+            // A failed pipeline still has to wait for the pool to let go of the buffers
+            job.compression.exceptionally(e -> null).join();
+        }
+        plainPool.release(job.plain);
+        compressedPool.release(job.compressed);
+        job.plain = null;
+        job.compressed = null;
+    }
+
+    // Runs one stage on its own thread until the end marker comes through. After a failure the remaining jobs
+    // are only drained, so their buffers return to the pools and whoever waits for them sees the failure.
+    private void startStage(String name, BlockingQueue<Job> input, Stage stage, BlockingQueue<Job> output) {
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    Job job = input.take();
+                    if (job == END) {
+                        if (output != null) {
+                            output.put(END);
+                        }
+                        return;
+                    }
+                    if (failure == null) {
+                        try {
+                            stage.process(job);
+                        } catch (Throwable e) {
+                            failure = e;
+                        }
+                    }
+                    if (failure != null) {
+                        releaseInput(job);
+                        recordPool.release(job.record);
+                        job.result.completeExceptionally(failure);
+                    } else if (output != null) {
+                        output.put(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        stages.add(thread);
+    }
+
+    private static void put(BlockingQueue<Job> queue, Job job) throws InterruptedIOException {
+        try {
+            queue.put(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing a chunk");
+        }
+    }
+
+    // Carries an unchanged entry over by copying its sealed records as they are, without decrypting them.
+    // Records shared by several entries are copied once and stay shared. Chunks compressed against a dictionary
+    // other than this writer's are decoded and compressed again, which is how a rebuilt dictionary takes over,
+    // and so are records of older containers that were sealed without a record id.
+    ContainerEntry copyEntry(ContainerEntry entry, ContainerReader source) throws IOException {
+        flush();
+        List<ChunkRef> chunks = new ArrayList<>(entry.getChunks().size());
+        for (ChunkRef chunk : entry.getChunks()) {
+            ChunkRef copy = copiedChunks.get(chunk.getOffset());
+            if (copy == null) {
+                // Slices of one solid block share the copied record, so the map keeps it whole
+                if (!source.hasRecordIds() || chunk.getCodec() == ChunkRef.CODEC_DEFLATE_DICTIONARY && !Arrays.equals(source.getDictionary(), dictionary)) {
+                    byte[] data = source.readChunk(chunk);
+                    byte[] plain = plainPool.acquire();
+                    System.arraycopy(data, 0, plain, 0, data.length);
+                    copy = join(submitChunk(plain, data.length, true)).slice(0, data.length);
+                    copiedChunks.put(chunk.getOffset(), copy);
+                } else {
+                    copy = chunk.withOffset(storage.append(source.readSealed(chunk))).slice(0, chunk.getSize());
+                    copiedChunks.put(chunk.getOffset(), copy);
+                    statistics.addCopied(chunk.getLength());
+                }
+                if (idMac != null && chunk.getId() != null) {
+                    knownChunks.putIfAbsent(ByteBuffer.wrap(chunk.getId()), CompletableFuture.completedFuture(copy));
+                }
+            }
+            chunks.add(copy.slice(chunk.getSliceOffset(), chunk.getSliceLength()));
+        }
+        return new ContainerEntry(entry.getPath(), false, entry.getSize(), entry.getLastModified(), entry.getChecksum(), chunks);
+    }
+
+    // Sends off the open solid block and waits for everything queued so far. The write stage appends in queue
+    // order, so once the last queued chunk is written all of them are.
+    void flush() throws IOException {
+        flushBlock();
+        if (lastWrite != null) {
+            join(lastWrite);
+        }
+    }
+
+    static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("Unable to write container", cause);
+        }
+    }
+
+    void finish(ContainerIndex index) throws IOException {
+        flush();
+        index.setManifest(storage.getManifest());
+        index.setDictionary(dictionaryRef);
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(indexBytes))) {
+            index.write(out);
+        }
+        byte[] indexPlain = indexBytes.toByteArray();
+        byte[] indexRecord = new byte[RecordCipher.maxRecordLength(indexPlain.length)];
+        int indexLength = recordCipher.seal(RecordCipher.KIND_INDEX, null, indexPlain, 0, indexPlain.length, indexRecord);
+        storage.commit(ByteBuffer.wrap(indexRecord, 0, indexLength));
+        statistics.finish();
+    }
+
+    // Stops the stages once everything queued has gone through; nothing is appended after this returns
+    @Override
+    public void close() throws IOException {
+        boolean interrupted = false;
+        try {
+            compressQueue.put(END);
+            for (Thread stage : stages) {
+                stage.join();
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            stages.forEach(Thread::interrupt);
+        } finally {
+            releaseCompressionPool(compressors);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping the container writer");
+        }
+    }
+
+    private interface Stage {
+        void process(Job job) throws IOException;
+    }
+
+    // One chunk on its way through the pipeline; the buffers belong to whichever stage holds the job
+    private static final class Job {
+        private final int length;
+        private final byte[] id;
+        private final CompletableFuture<ChunkRef> result = new CompletableFuture<>();
+        private byte[] plain;
+        private byte[] compressed;
+        private boolean compress;
+        private CompletableFuture<Void> compression;
+        private volatile int compressedLength;
+        private volatile byte codec;
+        private byte[] record;
+        private int recordLength;
+
+        private Job(byte[] plain, int length, byte[] id) {
+            this.plain = plain;
+            this.length = length;
+            this.id = id;
+        }
+    }
+}
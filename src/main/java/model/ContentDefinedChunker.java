@@ -0,0 +1,61 @@
+package model;
+
+import java.util.SplittableRandom;
+
+// Finds chunk boundaries from the content itself with a gear rolling hash (FastCDC style), so inserting or
+// removing bytes only changes the chunks around the edit and identical data produces identical chunks.
+class ContentDefinedChunker {
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x46464354L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int normalSize;
+    private final int maxSize;
+    private final long strictMask;
+    private final long looseMask;
+
+    // Chunks are between a quarter and all of maxSize, aiming at half of it
+    ContentDefinedChunker(int maxSize) {
+        this.maxSize = maxSize;
+        this.minSize = maxSize / 4;
+        this.normalSize = maxSize / 2;
+        int bits = 31 - Integer.numberOfLeadingZeros(normalSize);
+        // Masks test the high bits of the hash, which depend on the last 64 bytes rather than the last few
+        this.strictMask = highBits(bits + 1);
+        this.looseMask = highBits(bits - 1);
+    }
+
+    private static long highBits(int count) {
+        return count <= 0 ? 0 : -1L << (64 - count);
+    }
+
+    // Length of the next chunk in data[off, off + len); len is either maxSize or the rest of the file
+    int nextChunkLength(byte[] data, int off, int len) {
+        if (len <= minSize) {
+            return len;
+        }
+        int end = Math.min(len, maxSize);
+        int normal = Math.min(end, normalSize);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[off + i] & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[off + i] & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,124 @@
+package model;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Central access to the ciphers of the application. Cipher.getInstance searches the providers and builds a new
+// object on every call, so an engine keeps the ciphers and MACs it handed out once they are released and only
+// initialises them again with the next key and nonce. Each container reader and writer has an engine of its own,
+// so the keyed instances go away with it instead of staying behind on the threads that used them. Blocks are
+// processed from buffer to buffer into per-thread scratch buffers that grow to the largest block seen and are
+// reused afterwards, so the record path allocates nothing per block but the parameter spec that carries the nonce.
+public final class CryptoEngine {
+    // Slots of the per-thread scratch buffers, so a caller can hold a sealed record and its plaintext at once
+    public static final int SEALED = 0;
+    public static final int PLAIN = 1;
+
+    private static final ThreadLocal<ByteBuffer[]> BUFFERS = ThreadLocal.withInitial(() -> new ByteBuffer[2]);
+    private static volatile boolean directBuffers = true;
+
+    private final Map<String, Queue<Cipher>> ciphers = new ConcurrentHashMap<>();
+    private final Map<String, Queue<Mac>> macs = new ConcurrentHashMap<>();
+
+    // A cipher for the transformation, initialised for the key and parameters, that belongs to the caller until it
+    // is released; released ciphers are handed out again
+    public Cipher acquireCipher(String transformation, int mode, Key key, AlgorithmParameterSpec parameters) throws GeneralSecurityException {
+        Cipher cipher = ciphers.computeIfAbsent(transformation, name -> new ConcurrentLinkedQueue<>()).poll();
+        if (cipher == null) {
+            return cipher(transformation, mode, key, parameters);
+        }
+        try {
+            init(cipher, mode, key, parameters);
+        } catch (InvalidKeyException e) {
+            // ChaCha20 refuses the key and nonce it was last initialised with, even to open the same record again,
+            // so such a cipher is replaced by a fresh one
+            cipher = cipher(transformation, mode, key, parameters);
+        }
+        return cipher;
+    }
+
+    public void releaseCipher(Cipher cipher) {
+        ciphers.get(cipher.getAlgorithm()).offer(cipher);
+    }
+
+    // A MAC for the algorithm, initialised for the key, with the same rules as the ciphers
+    public Mac acquireMac(String algorithm, Key key) throws GeneralSecurityException {
+        Mac mac = macs.computeIfAbsent(algorithm, name -> new ConcurrentLinkedQueue<>()).poll();
+        if (mac == null) {
+            return mac(algorithm, key);
+        }
+        mac.init(key);
+        return mac;
+    }
+
+    public void releaseMac(Mac mac) {
+        macs.get(mac.getAlgorithm()).offer(mac);
+    }
+
+    // A cipher of its own for one-off uses such as key files and the legacy loader
+    public static Cipher cipher(String transformation, int mode, Key key, AlgorithmParameterSpec parameters) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(transformation);
+        init(cipher, mode, key, parameters);
+        return cipher;
+    }
+
+    private static void init(Cipher cipher, int mode, Key key, AlgorithmParameterSpec parameters) throws GeneralSecurityException {
+        if (parameters == null) {
+            cipher.init(mode, key);
+        } else {
+            cipher.init(mode, key, parameters);
+        }
+    }
+
+    public static Mac mac(String algorithm, Key key) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(key);
+        return mac;
+    }
+
+    // Runs the input from its position to its limit through the cipher into the output and returns the number of
+    // bytes written; both buffers advance past what was processed
+    public static int process(Cipher cipher, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        return cipher.doFinal(input, output);
+    }
+
+    // One-shot helpers for small payloads such as key files, where the result has to be an array of its own
+    public static byte[] encrypt(String transformation, Key key, byte[] data) throws GeneralSecurityException {
+        return cipher(transformation, Cipher.ENCRYPT_MODE, key, null).doFinal(data);
+    }
+
+    public static byte[] decrypt(String transformation, Key key, byte[] data) throws GeneralSecurityException {
+        return cipher(transformation, Cipher.DECRYPT_MODE, key, null).doFinal(data);
+    }
+
+    // A cleared per-thread buffer of at least the given capacity, limited to it. The sealed slot is a direct buffer
+    // by default, so file reads land in it without the copy the channel makes for heap buffers; the plaintext
+    // slot is always on the heap because the codecs work on arrays.
+    public static ByteBuffer buffer(int slot, int capacity) {
+        ByteBuffer[] buffers = BUFFERS.get();
+        ByteBuffer buffer = buffers[slot];
+        boolean direct = slot == SEALED && directBuffers;
+        if (buffer == null || buffer.capacity() < capacity || buffer.isDirect() != direct) {
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            buffers[slot] = buffer;
+        }
+        return buffer.clear().limit(capacity);
+    }
+
+    public static boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    public static void setDirectBuffers(boolean direct) {
+        directBuffers = direct;
+    }
+}
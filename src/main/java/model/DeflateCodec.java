@@ -0,0 +1,99 @@
+package model;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// java.util.zip deflate. Deflaters and Inflaters hold native memory, so they are pooled and reused
+// instead of being created for every block. With a preset dictionary, small blocks can refer to the
+// dictionary's bytes as if they preceded the block; such blocks need the same dictionary to be read.
+public class DeflateCodec implements CompressionCodec {
+    private final int level;
+    private final byte[] dictionary;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    public DeflateCodec(int level) {
+        this(level, null);
+    }
+
+    public DeflateCodec(int level, byte[] dictionary) {
+        this.level = level;
+        this.dictionary = dictionary;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public byte getId() {
+        return dictionary != null ? ChunkRef.CODEC_DEFLATE_DICTIONARY : ChunkRef.CODEC_DEFLATE;
+    }
+
+    @Override
+    public String getName() {
+        return dictionary != null ? "deflate-dictionary" : "deflate";
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        try {
+            // Resetting drops the dictionary, so it is set again for every block
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(src, srcOff, srcLen);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished() && length < dstLen) {
+                length += deflater.deflate(dst, dstOff + length, dstLen - length);
+            }
+            return deflater.finished() ? length : -1;
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            inflater.setInput(src, srcOff, srcLen);
+            int length = 0;
+            while (length < dstLen) {
+                int inflated = inflater.inflate(dst, dstOff + length, dstLen - length);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    if (dictionary == null) {
+                        throw new IOException("Deflate block needs the container's dictionary");
+                    }
+                    inflater.setDictionary(dictionary);
+                    continue;
+                }
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != dstLen) {
+                throw new IOException("Deflate block is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Deflate block is corrupt", e);
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+    }
+}
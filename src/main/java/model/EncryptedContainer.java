@@ -2,101 +2,589 @@ package model;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
-import javax.swing.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 public class EncryptedContainer {
     private static final String ALGORITHM = "AES";
+    private static final int BUFFER_SIZE = FileTransfer.BUFFER_SIZE;
+    private static final long MIN_COMPACTION_GARBAGE = 64L * 1024 * 1024;
     private final SecretKey secretKey;
+    private final ContainerOptions options;
+    private SaveStatistics lastSaveStatistics;
 
     public EncryptedContainer(SecretKey secretKey) {
+        this(secretKey, new ContainerOptions());
+    }
+
+    public EncryptedContainer(SecretKey secretKey, ContainerOptions options) {
         this.secretKey = secretKey;
+        this.options = options;
     }
 
-    public void saveContainerWithProgress(File file, Path directory, JProgressBar progressBar) throws Exception {
-        List<Path> fileList = Files.walk(directory)
-                .filter(path -> !Files.isDirectory(path))
-                .toList();
+    // What the most recent save read, deduplicated and wrote, or null before the first save
+    public SaveStatistics getLastSaveStatistics() {
+        return lastSaveStatistics;
+    }
 
-        try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-             ZipOutputStream zipOut = new ZipOutputStream(byteStream)) {
-            int totalFiles = fileList.size();
-            int processedFiles = 0;
+    public void saveContainerWithProgress(File file, Path directory, ProgressListener listener, CancellationToken cancellation) throws Exception {
+        saveWorkspaceWithProgress(file, new ContainerIndex(), directory, entryPath -> true, listener, cancellation);
+    }
 
-            for (Path filePath : fileList) {
-                ZipEntry zipEntry = new ZipEntry(directory.relativize(filePath).toString());
-                zipOut.putNextEntry(zipEntry);
+    // Writes a new container from the index and the workspace directory. Files on disk that are new or modified
+    // are encrypted again, every other entry keeps its sealed records, which are copied over without decrypting.
+    // The result goes to a side file (and a new generation of volumes) that replaces the container only once it
+    // is complete. New containers use the configured layout, existing ones keep theirs. Entries are copied before
+    // new files are written, so new data can be deduplicated against everything the container already holds.
+    public ContainerIndex saveWorkspaceWithProgress(File file, ContainerIndex index, Path directory, Predicate<String> modified, ProgressListener listener,
+                                                    CancellationToken cancellation) throws Exception {
+        return saveWorkspace(file, index, directory, modified, new ProgressTracker(listener, Progress.Phase.SAVING, options.getProgressUpdateRate(), cancellation), false);
+    }
+
+    // Saves the workspace with a full rewrite that trains a new compression dictionary on the current content,
+    // for when the files have drifted away from what the old dictionary was trained on
+    public ContainerIndex rebuildDictionaryWithProgress(File file, ContainerIndex index, Path directory, Predicate<String> modified, ProgressListener listener,
+                                                        CancellationToken cancellation) throws Exception {
+        return saveWorkspace(file, index, directory, modified, new ProgressTracker(listener, Progress.Phase.SAVING, options.getProgressUpdateRate(), cancellation), true);
+    }
+
+    // Writes the whole container to a side file that replaces the container in one atomic rename once it is complete
+    // and flushed. Until then the container stays as it was, and a save that fails or is cancelled only leaves the
+    // side file and its new volumes behind, which are deleted.
+    private ContainerIndex saveWorkspace(File file, ContainerIndex index, Path directory, Predicate<String> modified, ProgressTracker progress,
+                                         boolean rebuildDictionary) throws Exception {
+        List<Path> pathList;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            pathList = paths.filter(path -> !path.equals(directory) && !FileTransfer.isPartial(path)).toList();
+        }
 
-                try (InputStream in = Files.newInputStream(filePath)) {
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = in.read(buffer)) != -1) {
-                        zipOut.write(buffer, 0, len);
+        Path sideFile = file.toPath().resolveSibling(file.getName() + ".saving");
+        boolean copyRecords = file.exists() && index.size() > 0;
+        long volumeSize = index.getManifest() != null ? index.getManifest().getVolumeSize()
+                : index.size() == 0 ? options.getVolumeSize() : 0;
+        List<Path> previousVolumes = List.of();
+        ContainerIndex saved = new ContainerIndex();
+        // Copied records stay sealed as they are, so a rewrite keeps the data key, key slots and suite of the container.
+        // Formats from before envelope encryption get a data key of their own (see readDataKey).
+        SecretKey dataKey = copyRecords ? readDataKey(file) : KeyWrap.generate();
+        KeySlots slots = copyRecords ? readKeySlots(file, dataKey) : KeySlots.create(dataKey, secretKey);
+        try (FileChannel channel = FileChannel.open(sideFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ContainerStorage storage = ContainerStorage.create(channel, file.toPath(), volumeSize, options.getVolumeDirectories());
+             ContainerReader source = copyRecords ? new ContainerReader(file.toPath(), secretKey, index) : null;
+             ContainerWriter writer = new ContainerWriter(storage, dataKey, ContainerFormat.DEFAULT_CHUNK_SIZE, options,
+                     source != null ? source.getCipherSuite() : options.getCipherSuite())) {
+            try {
+                ContainerFormat.writeHeader(channel, ContainerFormat.DEFAULT_CHUNK_SIZE, writer.getCipherSuite(), slots);
+                // Copied records may be compressed against the current dictionary, so it is kept unless rebuilt
+                byte[] dictionary = source != null ? source.getDictionary() : null;
+                if (rebuildDictionary || dictionary == null && options.isDictionary()) {
+                    byte[] trained = CompressionDictionary.train(collectSamples(source, index, directory, pathList, modified), CompressionDictionary.DEFAULT_SIZE);
+                    if (trained != null) {
+                        dictionary = trained;
                     }
                 }
+                if (dictionary != null) {
+                    writer.setDictionary(dictionary, null);
+                }
+                List<ContainerEntry> copied = new ArrayList<>();
+                for (ContainerEntry entry : index.getEntries()) {
+                    if (entry.isDirectory() || !modified.test(entry.getPath()) || !Files.isRegularFile(directory.resolve(entry.getPath()))) {
+                        copied.add(entry);
+                    }
+                }
+                progress.setTotals(copied.stream().mapToLong(ContainerEntry::getSize).sum() + changedBytes(directory, pathList, index, modified),
+                        index.size() + pathList.size());
+                progress.addEntries(index.size() - copied.size());
+                for (ContainerEntry entry : copied) {
+                    progress.checkCancelled();
+                    saved.put(entry.isDirectory() ? entry : writer.copyEntry(entry, source));
+                    progress.addBytes(entry.getSize());
+                    progress.addEntries(1);
+                }
+                writeChangedFiles(writer, directory, pathList, index, modified, saved, progress);
+
+                progress.checkCancelled();
+                writer.finish(saved);
+                lastSaveStatistics = writer.getStatistics();
+                progress.finish();
+                if (source != null) {
+                    previousVolumes = source.getVolumePaths();
+                }
+            } catch (Exception e) {
+                storage.discard();
+                throw e;
+            }
+        } catch (Exception e) {
+            Files.deleteIfExists(sideFile);
+            throw e;
+        }
+
+        try {
+            Files.move(sideFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(sideFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        // The volumes of the previous generation are no longer referenced once the new container is in place
+        for (Path volume : previousVolumes) {
+            Files.deleteIfExists(volume);
+        }
+        return saved;
+    }
+
+    // Saves only what changed: new and modified files are appended as new records followed by an updated index,
+    // every other entry keeps pointing at its existing records, and volumes that get no new records stay
+    // byte-identical. Older formats and containers where dead records have grown larger than the live data
+    // are rewritten in full instead, which compacts them.
+    public ContainerIndex saveIncrementalWithProgress(File file, ContainerIndex index, Path directory, Predicate<String> modified, ProgressListener listener,
+                                                      CancellationToken cancellation) throws Exception {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            short version = ContainerFormat.readVersion(channel);
+            if (version == ContainerFormat.CURRENT_VERSION) {
+                long start = ContainerFormat.trailerEnd(ContainerFormat.readTrailer(channel));
+                try (ContainerStorage storage = ContainerStorage.forAppending(channel, file.toPath(), index.getManifest(), options.getVolumeDirectories(), start)) {
+                    if (!needsCompaction(storage.getStoredSize(), index)) {
+                        List<Path> pathList;
+                        try (Stream<Path> paths = Files.walk(directory)) {
+                            pathList = paths.filter(path -> !path.equals(directory) && !FileTransfer.isPartial(path)).toList();
+                        }
+
+                        byte[] dictionary = null;
+                        if (index.getDictionary() != null) {
+                            try (ContainerReader reader = new ContainerReader(file.toPath(), secretKey, index)) {
+                                dictionary = reader.getDictionary();
+                            }
+                        } else if (options.isDictionary()) {
+                            dictionary = CompressionDictionary.train(collectSamples(null, index, directory, pathList, modified), CompressionDictionary.DEFAULT_SIZE);
+                        }
+
+                        // The writer is closed before the catch runs, so no stage can still be appending when truncating
+                        try (ContainerWriter writer = new ContainerWriter(storage, ContainerFormat.readDataKey(channel, version, secretKey), ContainerFormat.readChunkSize(channel), options,
+                                ContainerFormat.readSuite(channel, version))) {
+                            writer.registerChunks(index);
+                            if (dictionary != null) {
+                                writer.setDictionary(dictionary, index.getDictionary());
+                            }
+                            ContainerIndex saved = index.copy();
+                            ProgressTracker progress = new ProgressTracker(listener, Progress.Phase.SAVING, options.getProgressUpdateRate(), cancellation);
+                            progress.setTotals(changedBytes(directory, pathList, index, modified), pathList.size());
+                            writeChangedFiles(writer, directory, pathList, index, modified, saved, progress);
+                            progress.checkCancelled();
+                            writer.finish(saved);
+                            lastSaveStatistics = writer.getStatistics();
+                            progress.finish();
+                            return saved;
+                        } catch (Exception e) {
+                            // Drop the partial append, the previous trailer is the last thing in the file again
+                            channel.truncate(start);
+                            storage.discard();
+                            throw e;
+                        }
+                    }
+                }
+            }
+        }
+        return saveWorkspaceWithProgress(file, index, directory, modified, listener, cancellation);
+    }
+
+    // Commits metadata changes as a journal record behind the current trailer, without touching file data or
+    // writing the index again. Returns false when the container needs a regular save instead: older formats,
+    // and journals that have grown long enough that a full index should be written.
+    boolean commitJournal(File file, IndexJournal journal) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            short version = ContainerFormat.readVersion(channel);
+            if (version != ContainerFormat.CURRENT_VERSION) {
+                return false;
+            }
+            RecordCipher recordCipher = new RecordCipher(ContainerFormat.readDataKey(channel, version, secretKey), ContainerFormat.readSuite(channel, version));
+            RecordRef trailer = ContainerFormat.readTrailer(channel);
+            int depth = trailer.getKind() == RecordCipher.KIND_JOURNAL
+                    ? ContainerReader.readJournal(channel, recordCipher, trailer).getDepth() + 1 : 1;
+            if (depth > IndexJournal.MAX_DEPTH) {
+                return false;
+            }
+            byte[] plain = journal.toBytes(trailer, depth);
+            byte[] record = new byte[RecordCipher.maxRecordLength(plain.length)];
+            int recordLength = recordCipher.seal(RecordCipher.KIND_JOURNAL, null, plain, 0, plain.length, record);
+            long start = ContainerFormat.trailerEnd(trailer);
+            try {
+                ContainerFormat.writeFully(channel, start, ByteBuffer.wrap(record, 0, recordLength));
+                ContainerFormat.writeTrailer(channel, start + recordLength, start, recordLength, RecordCipher.KIND_JOURNAL);
+                channel.truncate(start + recordLength + ContainerFormat.TRAILER_LENGTH);
+                channel.force(true);
+            } catch (IOException e) {
+                channel.truncate(start);
+                throw e;
+            }
+            lastSaveStatistics = new SaveStatistics();
+            lastSaveStatistics.finish();
+            return true;
+        }
+    }
+
+    // Rotates the key that protects the container: its slot is replaced by one for the new key, which rewrites the
+    // key slots in the header however large the container is
+    public void rewrapKey(File file, SecretKey newKey) throws Exception {
+        updateKeySlots(file, (slots, dataKey) -> slots.rewrap(secretKey, newKey));
+    }
+
+    // Lets the holder of another key open the container as well; only the key slots change
+    public void addKey(File file, SecretKey memberKey) throws Exception {
+        updateKeySlots(file, (slots, dataKey) -> slots.put(dataKey, memberKey));
+    }
 
-                zipOut.closeEntry();
-                processedFiles++;
-                final int progress = (int) (((double) processedFiles / totalFiles) * 100);
-                SwingUtilities.invokeLater(() -> progressBar.setValue(progress));
+    // Stops another key from opening the container. The data key stays the same, so this does not lock out
+    // someone who already unwrapped it; that takes a new container.
+    public void removeKey(File file, SecretKey memberKey) throws Exception {
+        updateKeySlots(file, (slots, dataKey) -> slots.remove(memberKey));
+    }
+
+    // Older containers are rewritten once before their keys can change
+    public boolean hasKeySlots(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return ContainerFormat.readVersion(channel) >= ContainerFormat.VERSION_KEY_SLOTS;
+        }
+    }
+
+    // Only this container's key can change the slots. Indexed containers of older formats are rewritten once
+    // first, keeping the records they have, so they get a key slot table.
+    private void updateKeySlots(File file, KeySlotUpdate update) throws Exception {
+        short version;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            version = ContainerFormat.readVersion(channel);
+        }
+        if (version < ContainerFormat.VERSION_INDEXED) {
+            throw new IOException("Container format " + version + " has no key slots, save it as a new container first");
+        }
+        if (version < ContainerFormat.VERSION_KEY_SLOTS) {
+            Path empty = Files.createTempDirectory("filefortress-keys");
+            try {
+                saveWorkspaceWithProgress(file, readIndex(file), empty, entryPath -> false, ProgressListener.NONE, CancellationToken.NONE);
+            } finally {
+                Files.deleteIfExists(empty);
             }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            KeySlots slots = ContainerFormat.readKeySlots(channel);
+            update.apply(slots, slots.open(secretKey));
+            ContainerFormat.writeKeySlots(channel, slots);
+            channel.force(true);
+        }
+    }
+
+    private interface KeySlotUpdate {
+        void apply(KeySlots slots, SecretKey dataKey) throws IOException;
+    }
 
-            zipOut.finish();
-            byte[] encryptedData = encrypt(byteStream.toByteArray());
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                fos.write(encryptedData);
+    // The data key a rewrite seals with. Formats from before envelope encryption sealed their records with the user's
+    // key, which would then stay the data key and keep opening the records after the user's key is rotated. They get
+    // a new one instead, which costs nothing: records of those formats have no record ids and are sealed again.
+    private SecretKey readDataKey(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            short version = ContainerFormat.readVersion(channel);
+            if (version < ContainerFormat.VERSION_ENVELOPE) {
+                return KeyWrap.generate();
             }
+            return ContainerFormat.readDataKey(channel, version, secretKey);
         }
     }
 
-    public void loadContainerWithProgress(File file, Path outputDirectory, JProgressBar progressBar) throws Exception {
-        byte[] encryptedData = Files.readAllBytes(file.toPath());
-        byte[] decryptedData = decrypt(encryptedData);
+    // Containers from before the key slots get one for this container's key
+    private KeySlots readKeySlots(File file, SecretKey dataKey) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (ContainerFormat.readVersion(channel) < ContainerFormat.VERSION_KEY_SLOTS) {
+                return KeySlots.create(dataKey, secretKey);
+            }
+            return ContainerFormat.readKeySlots(channel);
+        }
+    }
 
-        try (ByteArrayInputStream byteStream = new ByteArrayInputStream(decryptedData);
-             ZipInputStream zipIn = new ZipInputStream(byteStream)) {
-            long totalBytes = decryptedData.length;
-            long processedBytes = 0;
+    // Small files to train the dictionary on: the ones about to be written and, when the container is rewritten,
+    // the ones carried over from it, up to a fixed budget
+    private static List<byte[]> collectSamples(ContainerReader source, ContainerIndex index, Path directory, List<Path> pathList,
+                                               Predicate<String> modified) throws IOException {
+        List<byte[]> samples = new ArrayList<>();
+        long budget = CompressionDictionary.MAX_SAMPLE_BYTES;
+        for (Path path : pathList) {
+            if (budget <= 0) {
+                break;
+            }
+            String entryPath = ContainerIndex.toEntryPath(directory.relativize(path));
+            if (Files.isRegularFile(path) && (!index.contains(entryPath) || modified.test(entryPath)) && isSampleSize(Files.size(path))) {
+                byte[] sample = Files.readAllBytes(path);
+                samples.add(sample);
+                budget -= sample.length;
+            }
+        }
+        if (source != null) {
+            for (ContainerEntry entry : index.getEntries()) {
+                if (budget <= 0) {
+                    break;
+                }
+                if (!entry.isDirectory() && isSampleSize(entry.getSize())
+                        && (!modified.test(entry.getPath()) || !Files.isRegularFile(directory.resolve(entry.getPath())))) {
+                    ByteArrayOutputStream sample = new ByteArrayOutputStream((int) entry.getSize());
+                    source.readEntry(entry, sample);
+                    samples.add(sample.toByteArray());
+                    budget -= entry.getSize();
+                }
+            }
+        }
+        return samples;
+    }
 
+    private static boolean isSampleSize(long size) {
+        return size > 0 && size <= CompressionDictionary.MAX_SAMPLE_SIZE;
+    }
+
+    private static boolean needsCompaction(long storedSize, ContainerIndex index) {
+        long liveBytes = index.getStoredLength();
+        return storedSize - liveBytes > Math.max(liveBytes, MIN_COMPACTION_GARBAGE);
+    }
+
+    // Encrypts the workspace files that are not in the index yet or were modified, and records new directories.
+    // Files are handed to the writer's pipeline one after another; their entries are added once all are written.
+    private void writeChangedFiles(ContainerWriter writer, Path directory, List<Path> pathList, ContainerIndex index,
+                                   Predicate<String> modified, ContainerIndex saved, ProgressTracker progress) throws IOException {
+        writer.setProgress(progress);
+        List<CompletableFuture<ContainerEntry>> written = new ArrayList<>();
+        for (Path path : pathList) {
+            progress.checkCancelled();
+            String entryPath = ContainerIndex.toEntryPath(directory.relativize(path));
+            if (Files.isDirectory(path)) {
+                if (!index.contains(entryPath)) {
+                    saved.put(ContainerEntry.directory(entryPath, Files.getLastModifiedTime(path).toMillis()));
+                }
+            } else if (!index.contains(entryPath) || modified.test(entryPath)) {
+                written.add(writer.writeFile(entryPath, path));
+            }
+            progress.addEntries(1);
+        }
+        writer.flush();
+        for (CompletableFuture<ContainerEntry> entry : written) {
+            saved.put(ContainerWriter.join(entry));
+        }
+    }
+
+    // What the files about to be written hold, so progress can be told in bytes
+    private static long changedBytes(Path directory, List<Path> pathList, ContainerIndex index, Predicate<String> modified) throws IOException {
+        long bytes = 0;
+        for (Path path : pathList) {
+            String entryPath = ContainerIndex.toEntryPath(directory.relativize(path));
+            if (Files.isRegularFile(path) && (!index.contains(entryPath) || modified.test(entryPath))) {
+                bytes += Files.size(path);
+            }
+        }
+        return bytes;
+    }
+
+    public void extractEntry(File file, ContainerIndex index, ContainerEntry entry, Path target) throws IOException {
+        try (ContainerReader reader = new ContainerReader(file.toPath(), secretKey, index)) {
+            extractEntry(reader, entry, target, null);
+        }
+    }
+
+    private void extractEntry(ContainerReader reader, ContainerEntry entry, Path target, ProgressTracker progress) throws IOException {
+        Files.createDirectories(target.getParent());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+            reader.readEntry(entry, progress == null ? out : new ProgressOutputStream(out, progress));
+        }
+        Files.setLastModifiedTime(target, FileTime.fromMillis(entry.getLastModified()));
+    }
+
+    // Returns the table of contents without touching any file data, or null for formats that have none
+    public ContainerIndex readIndex(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (ContainerFormat.readVersion(channel) < ContainerFormat.VERSION_INDEXED) {
+                return null;
+            }
+        }
+        try (ContainerReader reader = new ContainerReader(file.toPath(), secretKey)) {
+            return reader.getIndex();
+        }
+    }
+
+    public void loadContainerWithProgress(File file, Path outputDirectory, ProgressListener listener, CancellationToken cancellation) throws Exception {
+        ProgressTracker progress = new ProgressTracker(listener, Progress.Phase.LOADING, options.getProgressUpdateRate(), cancellation);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            short version = ContainerFormat.readVersion(channel);
+            if (version == ContainerFormat.VERSION_LEGACY) {
+                progress.setTotals(channel.size(), 0);
+                loadLegacyContainer(channel, outputDirectory, progress);
+            } else if (version == ContainerFormat.VERSION_CHUNKED) {
+                progress.setTotals(channel.size(), 0);
+                try (ChunkedCipherInputStream chunkIn = new ChunkedCipherInputStream(new ChunkReader(channel, secretKey))) {
+                    extractZip(chunkIn, chunkIn::getBytesConsumed, outputDirectory, progress);
+                }
+            } else {
+                try (ContainerReader reader = new ContainerReader(file.toPath(), secretKey)) {
+                    extractIndexed(reader, outputDirectory, progress);
+                }
+            }
+        }
+        progress.finish();
+    }
+
+    private void extractIndexed(ContainerReader reader, Path outputDirectory, ProgressTracker progress) throws IOException {
+        ContainerIndex index = reader.getIndex();
+        progress.setTotals(index.getEntries().stream().mapToLong(ContainerEntry::getSize).sum(), index.size());
+        for (ContainerEntry entry : index.getEntries()) {
+            progress.checkCancelled();
+            Path filePath = outputDirectory.resolve(entry.getPath());
+            if (entry.isDirectory()) {
+                Files.createDirectories(filePath);
+            } else {
+                extractEntry(reader, entry, filePath, progress);
+            }
+            progress.addEntries(1);
+        }
+    }
+
+    // Compatibility reader for containers written before the chunked format: one AES blob over a zip stream
+    private void loadLegacyContainer(FileChannel channel, Path outputDirectory, ProgressTracker progress) throws Exception {
+        Cipher cipher = CryptoEngine.cipher(ALGORITHM, Cipher.DECRYPT_MODE, secretKey, null);
+
+        // Decrypt block by block straight into the zip reader, progress follows the ciphertext consumed
+        try (DecryptingInputStream decryptIn = new DecryptingInputStream(Channels.newInputStream(channel), cipher)) {
+            extractZip(decryptIn, decryptIn::getBytesConsumed, outputDirectory, progress);
+        }
+    }
+
+    private void extractZip(InputStream in, LongSupplier bytesConsumed, Path outputDirectory, ProgressTracker progress) throws IOException {
+        byte[] bytesIn = FileTransfer.acquireBuffer();
+        try (ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE))) {
             ZipEntry entry = zipIn.getNextEntry();
             while (entry != null) {
                 Path filePath = outputDirectory.resolve(entry.getName());
                 if (!entry.isDirectory()) {
                     Files.createDirectories(filePath.getParent());
-                    try (BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(filePath))) {
-                        byte[] bytesIn = new byte[1024];
+                    try (OutputStream out = Files.newOutputStream(filePath)) {
                         int read;
                         while ((read = zipIn.read(bytesIn)) != -1) {
-                            bos.write(bytesIn, 0, read);
-                            processedBytes += read;
-                            final int progress = (int) (((double) processedBytes / totalBytes) * 100);
-                            SwingUtilities.invokeLater(() -> progressBar.setValue(progress));
+                            progress.checkCancelled();
+                            out.write(bytesIn, 0, read);
+                            progress.setBytes(bytesConsumed.getAsLong());
                         }
                     }
                 } else {
                     Files.createDirectories(filePath);
                 }
                 zipIn.closeEntry();
+                progress.addEntries(1);
                 entry = zipIn.getNextEntry();
             }
+        } finally {
+            FileTransfer.releaseBuffer(bytesIn);
         }
     }
 
-    private byte[] encrypt(byte[] data) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        return cipher.doFinal(data);
+    // Counts what is written through it, so large entries report progress while they are extracted
+    private static class ProgressOutputStream extends FilterOutputStream {
+        private final ProgressTracker progress;
+
+        private ProgressOutputStream(OutputStream out, ProgressTracker progress) {
+            super(out);
+            this.progress = progress;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            progress.checkCancelled();
+            out.write(b, off, len);
+            progress.addBytes(len);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            progress.addBytes(1);
+        }
     }
 
-    private byte[] decrypt(byte[] encryptedData) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.DECRYPT_MODE, secretKey);
-        return cipher.doFinal(encryptedData);
+    // Decrypts the underlying stream in fixed-size blocks, reusing the same buffers for every block
+    private static class DecryptingInputStream extends InputStream {
+        private final InputStream in;
+        private final Cipher cipher;
+        private final byte[] cipherBuffer = new byte[BUFFER_SIZE];
+        private final byte[] single = new byte[1];
+        private byte[] plainBuffer;
+        private int position;
+        private int limit;
+        private long bytesConsumed;
+        private boolean finished;
+
+        DecryptingInputStream(InputStream in, Cipher cipher) {
+            this.in = in;
+            this.cipher = cipher;
+            this.plainBuffer = new byte[cipher.getOutputSize(BUFFER_SIZE)];
+        }
+
+        long getBytesConsumed() {
+            return bytesConsumed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (finished) {
+                    return -1;
+                }
+                fill();
+            }
+            int count = Math.min(len, limit - position);
+            System.arraycopy(plainBuffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        private void fill() throws IOException {
+            try {
+                int read = in.read(cipherBuffer);
+                position = 0;
+                if (read == -1) {
+                    finished = true;
+                    ensureCapacity(cipher.getOutputSize(0));
+                    limit = cipher.doFinal(plainBuffer, 0);
+                } else {
+                    bytesConsumed += read;
+                    ensureCapacity(cipher.getOutputSize(read));
+                    limit = cipher.update(cipherBuffer, 0, read, plainBuffer, 0);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to decrypt container", e);
+            }
+        }
+
+        private void ensureCapacity(int size) {
+            if (plainBuffer.length < size) {
+                plainBuffer = new byte[size];
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,269 @@
+package model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The one place plain file data is copied. File to file copies go through FileChannel.transferTo, which lets the
+// kernel move the data itself (copy_file_range or sendfile on Linux) without passing it through the heap. Streams
+// that cannot be transferred that way share a small pool of large buffers instead of allocating their own.
+public final class FileTransfer {
+    public static final int BUFFER_SIZE = 256 * 1024;
+    // Copies are written next to their target under this suffix, and saves leave such files out
+    public static final String PARTIAL_SUFFIX = ".ff-partial";
+
+    // Slice handed to transferTo at a time, so progress moves during large files
+    private static final long TRANSFER_SLICE = 8L * 1024 * 1024;
+    private static final BufferPool BUFFERS = new BufferPool(BUFFER_SIZE, Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    private FileTransfer() {
+    }
+
+    public static void copy(Path source, Path target) throws IOException {
+        copy(source, target, null);
+    }
+
+    // Replaces the target, like Files.copy with REPLACE_EXISTING. The data goes to a partial file next to it that is
+    // renamed over the target only once it is complete, so a copy that fails or is cancelled leaves the target as
+    // it was and nothing half written for a save to pick up.
+    public static void copy(Path source, Path target, ProgressTracker progress) throws IOException {
+        Path partial = target.resolveSibling(target.getFileName() + PARTIAL_SUFFIX);
+        boolean complete = false;
+        try {
+            copyData(source, partial, progress);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            complete = true;
+        } finally {
+            if (!complete) {
+                Files.deleteIfExists(partial);
+            }
+        }
+        if (progress != null) {
+            progress.addEntries(1);
+        }
+    }
+
+    public static boolean isPartial(Path path) {
+        return path.getFileName().toString().endsWith(PARTIAL_SUFFIX);
+    }
+
+    private static void copyData(Path source, Path target, ProgressTracker progress) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                if (progress != null) {
+                    progress.checkCancelled();
+                }
+                long transferred = in.transferTo(position, Math.min(TRANSFER_SLICE, size - position), out);
+                if (transferred <= 0) {
+                    throw new IOException(source + " shrank while it was copied");
+                }
+                position += transferred;
+                if (progress != null) {
+                    progress.addBytes(transferred);
+                }
+            }
+        }
+    }
+
+    // Copies each source, file or directory tree, into the target directory under its own name. Directories are
+    // listed and created and files copied by up to parallelCopies threads at once, so trees of many small files
+    // are not held up by the latency of one file system call after another. A failed item does not stop the
+    // others; the failures are reported together once everything else is done. Cancelling stops every copy at its
+    // next slice. With a checkpoint, files it lists as saved are skipped and copied files are reported to it.
+    public static void copyInto(List<Path> sources, Path targetDirectory, int parallelCopies, ProgressTracker progress,
+                                ImportCheckpoint checkpoint) throws IOException {
+        TreeCopy copy = new TreeCopy(Math.max(1, parallelCopies), progress == null ? new ProgressTracker(ProgressListener.NONE, Progress.Phase.IMPORTING, 0) : progress,
+                checkpoint);
+        try {
+            for (Path source : sources) {
+                copy.add(source, targetDirectory.resolve(source.getFileName().toString()));
+            }
+            copy.await();
+        } finally {
+            copy.stop();
+        }
+    }
+
+    // Each caller holds at most one buffer at a time, so waiting for one cannot deadlock
+    static byte[] acquireBuffer() throws IOException {
+        return BUFFERS.acquire();
+    }
+
+    static void releaseBuffer(byte[] buffer) {
+        BUFFERS.release(buffer);
+    }
+
+    private static final class TreeCopy {
+        // Failures kept with the exception that reports them, the count covers the rest
+        private static final int MAX_REPORTED_FAILURES = 100;
+
+        private final ExecutorService pool;
+        private final ProgressTracker progress;
+        private final ImportCheckpoint checkpoint;
+        private volatile boolean cancelled;
+        // One for the thread still adding sources, so the copy cannot look finished before they are all in
+        private final AtomicLong pending = new AtomicLong(1);
+        private final AtomicInteger items = new AtomicInteger();
+        private final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger failureCount = new AtomicInteger();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private TreeCopy(int parallelCopies, ProgressTracker progress, ImportCheckpoint checkpoint) {
+            this.progress = progress;
+            this.checkpoint = checkpoint;
+            this.pool = Executors.newFixedThreadPool(parallelCopies, runnable -> {
+                Thread thread = new Thread(runnable, "file-import");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private void add(Path source, Path target) {
+            items.incrementAndGet();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+                progress.addTotals(attributes.isDirectory() ? 0 : attributes.size(), 1);
+                submit(source, target, attributes, Set.of());
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        // Links are followed, so a link to a directory is imported as that directory. The directories above the
+        // source, as real paths, tell when a link leads back into the tree it is part of.
+        private void submit(Path source, Path target, BasicFileAttributes attributes, Set<Path> ancestors) {
+            pending.incrementAndGet();
+            pool.execute(() -> {
+                try {
+                    if (cancelled) {
+                        return;
+                    }
+                    progress.checkCancelled();
+                    if (attributes.isDirectory()) {
+                        copyDirectory(source, target, ancestors);
+                    } else if (checkpoint != null && checkpoint.isDone(source, target, attributes)) {
+                        progress.addBytes(attributes.size());
+                        progress.addEntries(1);
+                    } else if (checkpoint != null) {
+                        checkpoint.startCopy();
+                        try {
+                            copy(source, target, progress);
+                        } finally {
+                            checkpoint.endCopy();
+                        }
+                        checkpoint.completed(source, target, attributes);
+                    } else {
+                        copy(source, target, progress);
+                    }
+                } catch (InterruptedIOException | ClosedByInterruptException e) {
+                    cancelled = true;
+                } catch (IOException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    fail(new IOException(source + ": " + e.getMessage(), e));
+                } finally {
+                    finishOne();
+                }
+            });
+        }
+
+        // Creates the directory and hands its children to the pool; a directory that cannot be listed leaves
+        // out only its own subtree, a child that cannot be read only itself
+        private void copyDirectory(Path source, Path target, Set<Path> ancestors) throws IOException {
+            Path directory = source.toRealPath();
+            if (ancestors.contains(directory)) {
+                throw new IOException(source + " links to " + directory + ", which contains it, and was not followed");
+            }
+            Set<Path> children = new HashSet<>(ancestors);
+            children.add(directory);
+            Files.createDirectories(target);
+            progress.addEntries(1);
+            long bytes = 0;
+            int entries = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(source)) {
+                for (Path child : stream) {
+                    items.incrementAndGet();
+                    entries++;
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        fail(e);
+                        continue;
+                    }
+                    if (!attributes.isDirectory()) {
+                        bytes += attributes.size();
+                    }
+                    submit(child, target.resolve(child.getFileName().toString()), attributes, children);
+                }
+            } finally {
+                progress.addTotals(bytes, entries);
+            }
+        }
+
+        // Interrupts the copies still running, when the import ends early, and waits for them to let go of their files
+        private void stop() {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void fail(IOException e) {
+            if (failureCount.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+                failures.add(e);
+            }
+        }
+
+        private void finishOne() {
+            if (pending.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }
+
+        private void await() throws IOException {
+            finishOne();
+            try {
+                done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while importing");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            if (cancelled) {
+                throw new InterruptedIOException("Import cancelled");
+            }
+            if (failureCount.get() > 0) {
+                IOException failure = new IOException(failureCount.get() + " of " + items.get() + " items could not be copied, the first: "
+                        + failures.peek().getMessage());
+                failures.forEach(failure::addSuppressed);
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+// Remembers which files of a large import are safely in the container, so an import that was cancelled, failed or
+// cut short by the end of the process continues where it left off when the same files are imported again. Files
+// copied into the workspace are only safe once a save has taken them in, so every so many bytes the import saves
+// the container and then records the files that the save committed. The copies pause for that save, so it never
+// takes in a file that is only half copied. Each record names the source with its size and modification time; a
+// source that changed since is copied again.
+public final class ImportCheckpoint {
+    public interface Save {
+        void save() throws Exception;
+    }
+
+    private final Path file;
+    private final long intervalBytes;
+    private final Predicate<Path> saved;
+    private final Save save;
+    private final Set<String> done = new HashSet<>();
+    private final Map<Path, String> pending = new LinkedHashMap<>();
+    private final AtomicBoolean committing = new AtomicBoolean();
+    // Copies hold the read lock, a commit the write lock; fair, so a commit is not held off by new copies
+    private final ReentrantReadWriteLock copies = new ReentrantReadWriteLock(true);
+    private long pendingBytes;
+
+    // The saved predicate tells whether a target in the workspace is in the container as it is
+    public ImportCheckpoint(Path file, long intervalBytes, Predicate<Path> saved, Save save) throws IOException {
+        this.file = file;
+        this.intervalBytes = intervalBytes;
+        this.saved = saved;
+        this.save = save;
+        if (Files.exists(file)) {
+            done.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+        }
+    }
+
+    public boolean isResuming() {
+        return !done.isEmpty();
+    }
+
+    boolean isDone(Path source, Path target, BasicFileAttributes attributes) {
+        return done.contains(record(source, attributes)) && saved.test(target);
+    }
+
+    // Brackets the copy of one file; a copy waits here while a commit is saving
+    void startCopy() throws InterruptedIOException {
+        lock(copies.readLock());
+    }
+
+    void endCopy() {
+        copies.readLock().unlock();
+    }
+
+    // Called once a file has been copied, after endCopy; the thread that brings the pending files over the interval
+    // saves them
+    void completed(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        boolean due;
+        synchronized (this) {
+            pending.put(target, record(source, attributes));
+            pendingBytes += attributes.size();
+            due = pendingBytes >= intervalBytes;
+        }
+        if (due && committing.compareAndSet(false, true)) {
+            try {
+                commit();
+            } finally {
+                committing.set(false);
+            }
+        }
+    }
+
+    // Saves the container while no file is being copied and records the files the save took in. Files the save did
+    // not get to stay pending for the next commit.
+    public void commit() throws IOException {
+        Map<Path, String> batch;
+        synchronized (this) {
+            batch = new LinkedHashMap<>(pending);
+            pendingBytes = 0;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        lock(copies.writeLock());
+        try {
+            save.save();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to save the import checkpoint", e);
+        } finally {
+            copies.writeLock().unlock();
+        }
+        StringBuilder lines = new StringBuilder();
+        synchronized (this) {
+            for (Map.Entry<Path, String> item : batch.entrySet()) {
+                if (saved.test(item.getKey()) && pending.remove(item.getKey(), item.getValue())) {
+                    done.add(item.getValue());
+                    lines.append(item.getValue()).append('\n');
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    // Once the import is complete there is nothing left to continue
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static void lock(Lock lock) throws InterruptedIOException {
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import cancelled");
+        }
+    }
+
+    private static String record(Path source, BasicFileAttributes attributes) {
+        return attributes.size() + "\t" + attributes.lastModifiedTime().toMillis() + "\t" + source.toAbsolutePath();
+    }
+}
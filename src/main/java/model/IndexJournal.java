@@ -0,0 +1,120 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Metadata changes (rename, move, new folder, delete) that are committed without writing the whole index again.
+// Each journal record holds the operations of one commit and points back at the record it applies on top of,
+// either the previous journal record or the full index, so a commit costs the same however large the
+// container or the moved subtree is. Readers replay the chain onto the index, oldest record first.
+class IndexJournal {
+    static final int MAX_DEPTH = 64;
+
+    private static final byte RENAME = 1;
+    private static final byte ADD_DIRECTORY = 2;
+    private static final byte REMOVE = 3;
+
+    private final List<Operation> operations = new ArrayList<>();
+    private RecordRef previous;
+    private int depth;
+
+    void rename(String from, String to) {
+        operations.add(new Operation(RENAME, from, to, 0));
+    }
+
+    void addDirectory(String path, long lastModified) {
+        operations.add(new Operation(ADD_DIRECTORY, path, null, lastModified));
+    }
+
+    void remove(String path) {
+        operations.add(new Operation(REMOVE, path, null, 0));
+    }
+
+    boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    void clear() {
+        operations.clear();
+    }
+
+    // The record this one was written on top of
+    RecordRef getPrevious() {
+        return previous;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    void applyTo(ContainerIndex index) {
+        for (Operation operation : operations) {
+            switch (operation.type) {
+                case RENAME -> index.moveTree(operation.path, operation.target);
+                case ADD_DIRECTORY -> index.put(ContainerEntry.directory(operation.path, operation.lastModified));
+                case REMOVE -> index.removeTree(operation.path);
+                default -> throw new IllegalStateException("Unknown journal operation " + operation.type);
+            }
+        }
+    }
+
+    byte[] toBytes(RecordRef previous, int depth) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(previous.getOffset());
+            out.writeInt(previous.getLength());
+            out.writeByte(previous.getKind());
+            out.writeInt(depth);
+            out.writeInt(operations.size());
+            for (Operation operation : operations) {
+                out.writeByte(operation.type);
+                out.writeUTF(operation.path);
+                if (operation.type == RENAME) {
+                    out.writeUTF(operation.target);
+                } else if (operation.type == ADD_DIRECTORY) {
+                    out.writeLong(operation.lastModified);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static IndexJournal fromBytes(byte[] plain) throws IOException {
+        IndexJournal journal = new IndexJournal();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain))) {
+            journal.previous = new RecordRef(in.readLong(), in.readInt(), in.readByte());
+            journal.depth = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                String path = in.readUTF();
+                switch (type) {
+                    case RENAME -> journal.rename(path, in.readUTF());
+                    case ADD_DIRECTORY -> journal.addDirectory(path, in.readLong());
+                    case REMOVE -> journal.remove(path);
+                    default -> throw new IOException("Unknown journal operation " + type);
+                }
+            }
+        }
+        return journal;
+    }
+
+    private static final class Operation {
+        private final byte type;
+        private final String path;
+        private final String target;
+        private final long lastModified;
+
+        private Operation(byte type, String path, String target, long lastModified) {
+            this.type = type;
+            this.path = path;
+            this.target = target;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -17,16 +17,13 @@ public class KeyManager {
     }
 
     public static void saveKeyAndUsers(SecretKey key, File file, Map<String, User> users) throws Exception {
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ObjectOutputStream oos = new ObjectOutputStream(baos);
         oos.writeObject(users);
         oos.close();
 
         byte[] usersData = baos.toByteArray();
-        byte[] encryptedUsersData = cipher.doFinal(usersData);
+        byte[] encryptedUsersData = CryptoEngine.encrypt(ALGORITHM, key, usersData);
 
         try (FileOutputStream fos = new FileOutputStream(file);
              ObjectOutputStream oos2 = new ObjectOutputStream(fos)) {
@@ -44,15 +41,12 @@ public class KeyManager {
     }
 
     public static Map<String, User> loadUsers(SecretKey key, File file) throws Exception {
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.DECRYPT_MODE, key);
-
         try (FileInputStream fis = new FileInputStream(file);
              ObjectInputStream ois = new ObjectInputStream(fis)) {
             ois.readObject(); // Skip the key data
             byte[] encryptedUsersData = (byte[]) ois.readObject();
 
-            byte[] usersData = cipher.doFinal(encryptedUsersData);
+            byte[] usersData = CryptoEngine.decrypt(ALGORITHM, key, encryptedUsersData);
             ByteArrayInputStream bais = new ByteArrayInputStream(usersData);
             ObjectInputStream ois2 = new ObjectInputStream(bais);
 
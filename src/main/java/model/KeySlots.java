@@ -0,0 +1,115 @@
+package model;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+// The key slots of a container header, in the manner of LUKS. Each slot holds the container's data key wrapped by
+// the key of one user, so every one of them opens the same records. A slot is found by an id derived from the
+// user's key, which says nothing about the key itself. The table has a fixed size, so members are added and
+// removed by rewriting it in place.
+final class KeySlots {
+    static final int COUNT = 8;
+    private static final int ID_LENGTH = 16;
+    private static final int SLOT_LENGTH = ID_LENGTH + KeyWrap.WRAPPED_LENGTH;
+    static final int LENGTH = COUNT * SLOT_LENGTH;
+    private static final byte[] ID_LABEL = "FileFortress key slot".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_ID = new byte[ID_LENGTH];
+
+    private final byte[] table;
+
+    KeySlots(byte[] table) {
+        this.table = table;
+    }
+
+    // A table with a single slot, for a new container
+    static KeySlots create(SecretKey dataKey, SecretKey userKey) throws IOException {
+        KeySlots slots = new KeySlots(new byte[LENGTH]);
+        slots.put(dataKey, userKey);
+        return slots;
+    }
+
+    byte[] toBytes() {
+        return table;
+    }
+
+    SecretKey open(SecretKey userKey) throws IOException {
+        int slot = find(id(userKey));
+        if (slot < 0) {
+            throw new IOException("The key does not open this container");
+        }
+        return KeyWrap.unwrap(Arrays.copyOfRange(table, slot * SLOT_LENGTH + ID_LENGTH, (slot + 1) * SLOT_LENGTH), userKey);
+    }
+
+    // Wraps the data key for the user, in the user's slot if there is one already or else in a free one
+    void put(SecretKey dataKey, SecretKey userKey) throws IOException {
+        byte[] id = id(userKey);
+        int slot = find(id);
+        if (slot < 0) {
+            slot = find(EMPTY_ID);
+        }
+        if (slot < 0) {
+            throw new IOException("All " + COUNT + " key slots of the container are in use");
+        }
+        System.arraycopy(id, 0, table, slot * SLOT_LENGTH, ID_LENGTH);
+        System.arraycopy(KeyWrap.wrap(dataKey, userKey), 0, table, slot * SLOT_LENGTH + ID_LENGTH, KeyWrap.WRAPPED_LENGTH);
+    }
+
+    // Moves the user's slot to a new key of the user, in place, so it works even when every slot is in use
+    void rewrap(SecretKey userKey, SecretKey newKey) throws IOException {
+        int slot = find(id(userKey));
+        if (slot < 0) {
+            throw new IOException("The key does not open this container");
+        }
+        SecretKey dataKey = open(userKey);
+        Arrays.fill(table, slot * SLOT_LENGTH, (slot + 1) * SLOT_LENGTH, (byte) 0);
+        put(dataKey, newKey);
+    }
+
+    // Clears the user's slot; the last one is kept, or nobody could open the container any more
+    void remove(SecretKey userKey) throws IOException {
+        int slot = find(id(userKey));
+        if (slot < 0) {
+            return;
+        }
+        if (size() == 1) {
+            throw new IOException("The last key slot of the container cannot be removed");
+        }
+        Arrays.fill(table, slot * SLOT_LENGTH, (slot + 1) * SLOT_LENGTH, (byte) 0);
+    }
+
+    int size() {
+        int used = 0;
+        for (int slot = 0; slot < COUNT; slot++) {
+            if (!isEmpty(slot)) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    private boolean isEmpty(int slot) {
+        return Arrays.equals(table, slot * SLOT_LENGTH, slot * SLOT_LENGTH + ID_LENGTH, EMPTY_ID, 0, ID_LENGTH);
+    }
+
+    private int find(byte[] id) {
+        for (int slot = 0; slot < COUNT; slot++) {
+            if (MessageDigest.isEqual(Arrays.copyOfRange(table, slot * SLOT_LENGTH, slot * SLOT_LENGTH + ID_LENGTH), id)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] id(SecretKey userKey) throws IOException {
+        try {
+            return Arrays.copyOf(CryptoEngine.mac(CipherSuite.MAC_ALGORITHM, userKey).doFinal(ID_LABEL), ID_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to derive the key slot id", e);
+        }
+    }
+}
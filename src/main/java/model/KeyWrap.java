@@ -0,0 +1,50 @@
+package model;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Envelope encryption for containers. The records of a container are sealed with a random data key of its own,
+// and only that key is sealed with the user's key and kept in the header. Changing the user's key rewraps the
+// data key and leaves every record as it is.
+final class KeyWrap {
+    static final int KEY_LENGTH = 32;
+    // A sealed record of the key, always AES-GCM whatever the suite of the data records
+    static final int WRAPPED_LENGTH = Integer.BYTES + ContainerFormat.NONCE_LENGTH + KEY_LENGTH + ContainerFormat.TAG_LENGTH;
+    private static final String ALGORITHM = "AES";
+
+    private KeyWrap() {
+    }
+
+    static SecretKey generate() throws IOException {
+        try {
+            return KeyManager.generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to generate a data key", e);
+        }
+    }
+
+    static byte[] wrap(SecretKey dataKey, SecretKey wrappingKey) throws IOException {
+        byte[] key = dataKey.getEncoded();
+        byte[] wrapped = new byte[RecordCipher.maxRecordLength(key.length)];
+        int length = new RecordCipher(wrappingKey).seal(RecordCipher.KIND_KEY, null, key, 0, key.length, wrapped);
+        return Arrays.copyOf(wrapped, length);
+    }
+
+    // Fails when the wrapping key is not the one the data key was wrapped with
+    static SecretKey unwrap(byte[] wrapped, SecretKey wrappingKey) throws IOException {
+        byte[] key;
+        try {
+            key = new RecordCipher(wrappingKey).open(RecordCipher.KIND_KEY, null, ByteBuffer.wrap(wrapped), 0);
+        } catch (IOException e) {
+            throw new IOException("The key does not open this container", e);
+        }
+        if (key.length != KEY_LENGTH) {
+            throw new IOException("The container's data key is damaged");
+        }
+        return new SecretKeySpec(key, ALGORITHM);
+    }
+}
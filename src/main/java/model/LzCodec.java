@@ -0,0 +1,176 @@
+package model;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+// Fast LZ77 codec in the style of the LZ4 block format: a greedy single-probe hash table while compressing and
+// nothing but copies while decompressing, which trades ratio for speed in both directions.
+// A block is a run of sequences, each a token (literal length << 4 | match length - 4), the literals, a
+// little-endian 16 bit match offset and the match length; lengths of 15 or more continue in bytes of up to 255.
+// The last sequence holds only literals.
+public class LzCodec implements CompressionCodec {
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+    // Matches stop short of the end so every block finishes with literals, which keeps the decoder simple
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int SKIP_TRIGGER = 6;
+
+    @Override
+    public byte getId() {
+        return ChunkRef.CODEC_LZ;
+    }
+
+    @Override
+    public String getName() {
+        return "lz";
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+        int end = srcOff + srcLen;
+        int dstEnd = dstOff + dstLen;
+        int anchor = srcOff;
+        int op = dstOff;
+
+        if (srcLen >= MATCH_FIND_LIMIT + 1) {
+            // Positions are stored one based so a zero slot means empty
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = end - LAST_LITERALS;
+            int findLimit = end - MATCH_FIND_LIMIT;
+            int ip = srcOff + 1;
+            while (ip < findLimit) {
+                int sequence = (int) INT.get(src, ip);
+                int slot = hash(sequence);
+                int ref = table[slot] - 1 + srcOff;
+                table[slot] = ip - srcOff + 1;
+                if (ref < srcOff || ip - ref > MAX_OFFSET || (int) INT.get(src, ref) != sequence) {
+                    // Incompressible stretches are crossed in growing steps
+                    ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+                    continue;
+                }
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op, dstEnd);
+                if (op < 0) {
+                    return -1;
+                }
+                ip += matchLength;
+                anchor = ip;
+                if (ip - 2 < findLimit) {
+                    table[hash((int) INT.get(src, ip - 2))] = ip - 2 - srcOff + 1;
+                }
+            }
+        }
+
+        int literals = end - anchor;
+        if (op + 1 + literals / 255 + 1 + literals > dstEnd) {
+            return -1;
+        }
+        dst[op++] = (byte) (Math.min(literals, 15) << 4);
+        op = writeLength(literals, dst, op);
+        System.arraycopy(src, anchor, dst, op, literals);
+        return op + literals - dstOff;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literals, int offset, int matchLength,
+                                     byte[] dst, int op, int dstEnd) {
+        int extra = matchLength - MIN_MATCH;
+        if (op + 1 + literals / 255 + 1 + literals + 2 + extra / 255 + 1 > dstEnd) {
+            return -1;
+        }
+        dst[op++] = (byte) (Math.min(literals, 15) << 4 | Math.min(extra, 15));
+        op = writeLength(literals, dst, op);
+        System.arraycopy(src, literalStart, dst, op, literals);
+        op += literals;
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        return writeLength(extra, dst, op);
+    }
+
+    // Lengths of 15 or more are continued after the token in bytes of 255 and a final remainder
+    private static int writeLength(int length, byte[] dst, int op) {
+        if (length >= 15) {
+            length -= 15;
+            while (length >= 255) {
+                dst[op++] = (byte) 255;
+                length -= 255;
+            }
+            dst[op++] = (byte) length;
+        }
+        return op;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        int ip = srcOff;
+        int end = srcOff + srcLen;
+        int op = dstOff;
+        int dstEnd = dstOff + dstLen;
+        try {
+            while (ip < end) {
+                int token = src[ip++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (literals > end - ip || literals > dstEnd - op) {
+                    throw new IOException("LZ block is corrupt");
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip == end) {
+                    break;
+                }
+
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < dstOff || matchLength > dstEnd - op) {
+                    throw new IOException("LZ block is corrupt");
+                }
+                // An offset shorter than the match repeats the bytes just written; copying in steps of the
+                // distance already written doubles each copy and stays correct
+                while (matchLength > 0) {
+                    int count = Math.min(matchLength, op - ref);
+                    System.arraycopy(dst, ref, dst, op, count);
+                    op += count;
+                    matchLength -= count;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("LZ block is truncated", e);
+        }
+        if (op != dstEnd) {
+            throw new IOException("LZ block has " + (op - dstOff) + " bytes instead of " + dstLen);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Runs the operations the user starts on a fixed number of threads. Waiting operations are taken by priority and
+// then in the order they came in. An operation on a container says whether it reads or writes it: writes to the
+// same container run one at a time and in order, reads run alongside each other. Work that has a thread of its
+// own, such as the background saves, takes the same container locks without taking one of the threads, so an
+// operation waiting for a save cannot starve it. Operations that wait for a save themselves, such as closing the
+// container, must not name one, or they would hold up the save they wait for.
+public final class OperationExecutor {
+    public enum Priority {
+        INTERACTIVE,
+        NORMAL,
+        BACKGROUND
+    }
+
+    public enum Access {
+        READ,
+        WRITE
+    }
+
+    public interface Task<T> {
+        T run() throws Exception;
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final Map<Object, ReentrantReadWriteLock> containerLocks = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    public OperationExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "operation-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // An operation that touches no container
+    public Operation<Void> submit(String name, Priority priority, Runnable action) {
+        return submit(name, priority, null, Access.READ, action);
+    }
+
+    public Operation<Void> submit(String name, Priority priority, Object container, Access access, Runnable action) {
+        return submit(name, priority, container, access, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> Operation<T> submit(String name, Priority priority, Object container, Access access, Task<T> task) {
+        Operation<T> operation = new Operation<>(name, priority, sequence.getAndIncrement(), container == null ? null : lockFor(container, access), task);
+        pool.execute(operation);
+        return operation;
+    }
+
+    // Runs the task on the calling thread once it holds the container's lock
+    public <T> T runLocked(Object container, Access access, Task<T> task) throws Exception {
+        return runLocked(lockFor(container, access), task);
+    }
+
+    public Metrics getMetrics() {
+        long done = completed.sum();
+        return new Metrics(pool.getQueue().size(), running.get(), done, failed.sum(), cancelled.sum(),
+                done > 0 ? waitNanos.sum() / done : 0, maxWaitNanos.get(), done > 0 ? runNanos.sum() / done : 0);
+    }
+
+    // Lets running operations finish, queued ones are dropped
+    public void shutdown() {
+        pool.getQueue().forEach(queued -> ((Operation<?>) queued).cancel(false));
+        pool.shutdown();
+    }
+
+    private Lock lockFor(Object container, Access access) {
+        // Fair, so a stream of reads cannot keep a write from ever running
+        ReentrantReadWriteLock lock = containerLocks.computeIfAbsent(container, key -> new ReentrantReadWriteLock(true));
+        return access == Access.WRITE ? lock.writeLock() : lock.readLock();
+    }
+
+    // A queued or running operation. Cancelling one that waits takes it out of the queue, cancelling one that
+    // runs interrupts it, which stops it at its next blocking call.
+    public final class Operation<T> extends FutureTask<T> implements Comparable<Operation<?>> {
+        private final String name;
+        private final Priority priority;
+        private final long order;
+        private final long submittedNanos = System.nanoTime();
+
+        private Operation(String name, Priority priority, long order, Lock lock, Task<T> task) {
+            super(() -> runLocked(lock, task));
+            this.name = name;
+            this.priority = priority;
+            this.order = order;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                return;
+            }
+            long startNanos = System.nanoTime();
+            long waited = startNanos - submittedNanos;
+            waitNanos.add(waited);
+            maxWaitNanos.accumulate(waited);
+            running.incrementAndGet();
+            try {
+                super.run();
+            } finally {
+                running.decrementAndGet();
+                runNanos.add(System.nanoTime() - startNanos);
+                completed.increment();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelledNow = super.cancel(mayInterruptIfRunning);
+            if (cancelledNow) {
+                pool.remove(this);
+            }
+            return cancelledNow;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                cancelled.increment();
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed.increment();
+            super.setException(t);
+        }
+
+        @Override
+        public int compareTo(Operation<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + priority + ")";
+        }
+    }
+
+    private static <T> T runLocked(Lock lock, Task<T> task) throws Exception {
+        if (lock == null) {
+            return task.run();
+        }
+        lock.lockInterruptibly();
+        try {
+            return task.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queue depth and latencies since the executor started; wait is the time from submission until a thread took
+    // the operation up, run the time it then took including any wait for its container
+    public static final class Metrics {
+        private final int queued;
+        private final int running;
+        private final long completed;
+        private final long failed;
+        private final long cancelled;
+        private final long averageWaitNanos;
+        private final long maxWaitNanos;
+        private final long averageRunNanos;
+
+        private Metrics(int queued, int running, long completed, long failed, long cancelled, long averageWaitNanos, long maxWaitNanos, long averageRunNanos) {
+            this.queued = queued;
+            this.running = running;
+            this.completed = completed;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.averageWaitNanos = averageWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.averageRunNanos = averageRunNanos;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getCancelled() {
+            return cancelled;
+        }
+
+        public double getAverageWaitMillis() {
+            return averageWaitNanos / 1e6;
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitNanos / 1e6;
+        }
+
+        public double getAverageRunMillis() {
+            return averageRunNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d queued, %d running, %d completed, %d failed, %d cancelled, wait %.1f ms average %.1f ms max, run %.1f ms average",
+                    queued, running, completed, failed, cancelled, getAverageWaitMillis(), getMaxWaitMillis(), getAverageRunMillis());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package model;
+
+// A snapshot of a long-running operation as reported to a ProgressListener. Totals of zero mean they are not
+// known, in which case the percentage follows whichever of bytes and entries has a total.
+public final class Progress {
+    public enum Phase {
+        SAVING("Saving"),
+        LOADING("Loading"),
+        IMPORTING("Importing"),
+        COPYING("Copying");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Phase phase;
+    private final long bytesDone;
+    private final long bytesTotal;
+    private final int entriesDone;
+    private final int entriesTotal;
+    private final long elapsedNanos;
+    private final boolean finished;
+
+    Progress(Phase phase, long bytesDone, long bytesTotal, int entriesDone, int entriesTotal, long elapsedNanos, boolean finished) {
+        this.phase = phase;
+        this.bytesDone = bytesDone;
+        this.bytesTotal = bytesTotal;
+        this.entriesDone = entriesDone;
+        this.entriesTotal = entriesTotal;
+        this.elapsedNanos = elapsedNanos;
+        this.finished = finished;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public long getBytesDone() {
+        return bytesDone;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public int getEntriesDone() {
+        return entriesDone;
+    }
+
+    public int getEntriesTotal() {
+        return entriesTotal;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    // 0 to 100
+    public int getPercent() {
+        if (finished) {
+            return 100;
+        }
+        double fraction = bytesTotal > 0 ? (double) bytesDone / bytesTotal
+                : entriesTotal > 0 ? (double) entriesDone / entriesTotal : 0;
+        return (int) Math.max(0, Math.min(100, fraction * 100));
+    }
+
+    // Average since the operation started
+    public double getMegabytesPerSecond() {
+        return elapsedNanos > 0 ? bytesDone / (1024.0 * 1024.0) / (elapsedNanos / 1e9) : 0;
+    }
+
+    // Time left at the average rate so far, or -1 while it cannot be estimated
+    public long getEtaMillis() {
+        if (finished) {
+            return 0;
+        }
+        if (bytesTotal > 0 && bytesDone > 0) {
+            return (long) ((double) (bytesTotal - Math.min(bytesDone, bytesTotal)) / bytesDone * elapsedNanos / 1_000_000);
+        }
+        if (entriesTotal > 0 && entriesDone > 0) {
+            return (long) ((double) (entriesTotal - Math.min(entriesDone, entriesTotal)) / entriesDone * elapsedNanos / 1_000_000);
+        }
+        return -1;
+    }
+
+    // For example "Saving 45% - 120.3 MB/s - ETA 0:12"
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(phase.getLabel()).append(' ').append(getPercent()).append('%');
+        if (bytesDone > 0) {
+            text.append(String.format(" - %.1f MB/s", getMegabytesPerSecond()));
+        }
+        long eta = getEtaMillis();
+        if (eta >= 0 && !finished) {
+            long seconds = (eta + 999) / 1000;
+            text.append(String.format(" - ETA %d:%02d", seconds / 60, seconds % 60));
+        }
+        return text.toString();
+    }
+}
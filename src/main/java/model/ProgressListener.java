@@ -0,0 +1,10 @@
+package model;
+
+// Receives progress of saves, loads, imports and copies. Reports come from the worker threads doing the job,
+// already coalesced by a ProgressTracker, so a listener that touches a user interface hands them over itself.
+public interface ProgressListener {
+    ProgressListener NONE = progress -> {
+    };
+
+    void onProgress(Progress progress);
+}
@@ -0,0 +1,98 @@
+package model;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counts the bytes and entries of one operation and passes snapshots on to a listener at no more than the given
+// rate, however often it is updated and from however many threads. Updates in between only add to the counters,
+// so reporting costs nothing per byte; the snapshot at the end is always delivered. The tracker also carries the
+// operation's cancellation token to the places that count its work, which are the places that can stop it.
+public final class ProgressTracker {
+    public static final int DEFAULT_UPDATE_RATE = 30;
+
+    private final ProgressListener listener;
+    private final CancellationToken cancellation;
+    private final long intervalNanos;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong nextReport = new AtomicLong(startNanos);
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicInteger entriesDone = new AtomicInteger();
+    private final AtomicLong bytesTotal = new AtomicLong();
+    private final AtomicInteger entriesTotal = new AtomicInteger();
+    private volatile Progress.Phase phase;
+
+    public ProgressTracker(ProgressListener listener, Progress.Phase phase) {
+        this(listener, phase, DEFAULT_UPDATE_RATE);
+    }
+
+    // Updates per second; zero or less reports only the end
+    public ProgressTracker(ProgressListener listener, Progress.Phase phase, int updatesPerSecond) {
+        this(listener, phase, updatesPerSecond, CancellationToken.NONE);
+    }
+
+    public ProgressTracker(ProgressListener listener, Progress.Phase phase, int updatesPerSecond, CancellationToken cancellation) {
+        this.listener = listener == null ? ProgressListener.NONE : listener;
+        this.cancellation = cancellation == null ? CancellationToken.NONE : cancellation;
+        this.phase = phase;
+        this.intervalNanos = updatesPerSecond > 0 ? 1_000_000_000L / updatesPerSecond : Long.MAX_VALUE;
+    }
+
+    public void setPhase(Progress.Phase phase) {
+        this.phase = phase;
+        report();
+    }
+
+    public void setTotals(long bytes, int entries) {
+        bytesTotal.set(bytes);
+        entriesTotal.set(entries);
+        report();
+    }
+
+    // For work that is found while it is done, such as the files of a directory tree being copied
+    public void addTotals(long bytes, int entries) {
+        bytesTotal.addAndGet(bytes);
+        entriesTotal.addAndGet(entries);
+        report();
+    }
+
+    public void addBytes(long bytes) {
+        bytesDone.addAndGet(bytes);
+        report();
+    }
+
+    // For sources that only tell how far they are, such as a stream of ciphertext
+    public void setBytes(long bytes) {
+        bytesDone.set(bytes);
+        report();
+    }
+
+    public void addEntries(int entries) {
+        entriesDone.addAndGet(entries);
+        report();
+    }
+
+    public void checkCancelled() throws InterruptedIOException {
+        cancellation.throwIfCancelled();
+    }
+
+    public void finish() {
+        listener.onProgress(snapshot(true));
+    }
+
+    // Only the thread that moves the next report time on reports, the others return at once
+    private void report() {
+        if (intervalNanos == Long.MAX_VALUE) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = nextReport.get();
+        if (now - next >= 0 && nextReport.compareAndSet(next, now + intervalNanos)) {
+            listener.onProgress(snapshot(false));
+        }
+    }
+
+    private Progress snapshot(boolean finished) {
+        return new Progress(phase, bytesDone.get(), bytesTotal.get(), entriesDone.get(), entriesTotal.get(), System.nanoTime() - startNanos, finished);
+    }
+}
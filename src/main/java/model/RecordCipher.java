@@ -0,0 +1,199 @@
+package model;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+// Seals and opens the length-prefixed records of an indexed container with the container's cipher suite.
+// A record is [payload length][nonce][ciphertext][tag]; the record kind and, for data records, the record id the
+// index names them by are bound as associated data, so a record cannot be moved to where another one belongs.
+// For AES-CTR the HMAC covers the kind, the id, the nonce and the ciphertext and is checked before anything is
+// decrypted.
+class RecordCipher {
+    static final byte KIND_DATA = 0;
+    static final byte KIND_INDEX = 1;
+    static final byte KIND_JOURNAL = 2;
+    static final byte KIND_DICTIONARY = 3;
+    static final byte KIND_KEY = 4;
+    // Every record id has this length, so the associated data of one record can never read as that of another
+    static final int RECORD_ID_LENGTH = 32;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // The kind is bound as one byte of associated data, taken from here instead of a new array per record
+    private static final byte[] KINDS = {KIND_DATA, KIND_INDEX, KIND_JOURNAL, KIND_DICTIONARY, KIND_KEY};
+    private static final ThreadLocal<byte[][]> NONCES = ThreadLocal.withInitial(() -> {
+        byte[][] nonces = new byte[CipherSuite.values().length][];
+        for (CipherSuite suite : CipherSuite.values()) {
+            nonces[suite.ordinal()] = new byte[suite.getNonceLength()];
+        }
+        return nonces;
+    });
+    private static final ThreadLocal<byte[][]> TAGS = ThreadLocal.withInitial(() -> new byte[2][CipherSuite.AES_CTR_HMAC.getTagLength()]);
+
+    private final CryptoEngine engine = new CryptoEngine();
+    private final CipherSuite suite;
+    private final SecretKey cipherKey;
+    private final SecretKey macKey;
+
+    RecordCipher(SecretKey secretKey) throws IOException {
+        this(secretKey, CipherSuite.AES_GCM);
+    }
+
+    // AES-GCM uses the container key as it always has. The other suites derive keys of their own from it, so the
+    // same key never serves two algorithms.
+    RecordCipher(SecretKey secretKey, CipherSuite suite) throws IOException {
+        this.suite = suite;
+        switch (suite) {
+            case CHACHA20_POLY1305 -> {
+                this.cipherKey = deriveKey(secretKey, "FileFortress record key chacha20-poly1305", "ChaCha20");
+                this.macKey = null;
+            }
+            case AES_CTR_HMAC -> {
+                this.cipherKey = deriveKey(secretKey, "FileFortress record key aes-ctr", "AES");
+                this.macKey = deriveKey(secretKey, "FileFortress record key hmac-sha256", CipherSuite.MAC_ALGORITHM);
+            }
+            default -> {
+                this.cipherKey = secretKey;
+                this.macKey = null;
+            }
+        }
+    }
+
+    private static SecretKey deriveKey(SecretKey secretKey, String label, String algorithm) throws IOException {
+        try {
+            Mac derive = Mac.getInstance(CipherSuite.MAC_ALGORITHM);
+            derive.init(new SecretKeySpec(secretKey.getEncoded(), CipherSuite.MAC_ALGORITHM));
+            return new SecretKeySpec(derive.doFinal(label.getBytes(StandardCharsets.UTF_8)), algorithm);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to derive the record key", e);
+        }
+    }
+
+    CipherSuite getSuite() {
+        return suite;
+    }
+
+    // Large enough for a record of any suite
+    static int maxRecordLength(int plainLength) {
+        return Integer.BYTES + plainLength + CipherSuite.MAX_OVERHEAD;
+    }
+
+    // Seals plain[off, off + len) into out starting at 0 and returns the full record length. The id is null for
+    // records that have none.
+    int seal(byte kind, byte[] id, byte[] plain, int off, int len, byte[] out) throws IOException {
+        try {
+            byte[] nonce = NONCES.get()[suite.ordinal()];
+            RANDOM.nextBytes(nonce);
+            int start = Integer.BYTES + nonce.length;
+            Cipher cipher = engine.acquireCipher(suite.getTransformation(), Cipher.ENCRYPT_MODE, cipherKey, suite.parameters(nonce));
+            int sealed;
+            try {
+                if (suite.isAead()) {
+                    cipher.updateAAD(KINDS, kind, 1);
+                    if (id != null) {
+                        cipher.updateAAD(id);
+                    }
+                    sealed = cipher.doFinal(plain, off, len, out, start);
+                } else {
+                    int encrypted = cipher.doFinal(plain, off, len, out, start);
+                    Mac mac = engine.acquireMac(CipherSuite.MAC_ALGORITHM, macKey);
+                    try {
+                        mac.update(KINDS, kind, 1);
+                        if (id != null) {
+                            mac.update(id);
+                        }
+                        mac.update(nonce);
+                        mac.update(out, start, encrypted);
+                        mac.doFinal(out, start + encrypted);
+                    } finally {
+                        engine.releaseMac(mac);
+                    }
+                    sealed = encrypted + suite.getTagLength();
+                }
+            } finally {
+                engine.releaseCipher(cipher);
+            }
+            int payloadLength = nonce.length + sealed;
+            out[0] = (byte) (payloadLength >>> 24);
+            out[1] = (byte) (payloadLength >>> 16);
+            out[2] = (byte) (payloadLength >>> 8);
+            out[3] = (byte) payloadLength;
+            System.arraycopy(nonce, 0, out, Integer.BYTES, nonce.length);
+            return Integer.BYTES + payloadLength;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to encrypt record", e);
+        }
+    }
+
+    byte[] open(byte kind, byte[] id, ByteBuffer record, long offset) throws IOException {
+        byte[] plain = new byte[plainLength(record, offset)];
+        open(kind, id, record, offset, ByteBuffer.wrap(plain));
+        return plain;
+    }
+
+    // Opens the record, which spans the buffer up to its limit, into out and returns the plaintext length.
+    // Both buffers may be direct; the record's position and limit are moved to the ciphertext. The id must be
+    // the one the record was sealed with.
+    int open(byte kind, byte[] id, ByteBuffer record, long offset, ByteBuffer out) throws IOException {
+        int plainLength = plainLength(record, offset);
+        try {
+            byte[] nonce = NONCES.get()[suite.ordinal()];
+            record.get(Integer.BYTES, nonce);
+            int start = Integer.BYTES + nonce.length;
+            if (!suite.isAead()) {
+                byte[][] tags = TAGS.get();
+                Mac mac = engine.acquireMac(CipherSuite.MAC_ALGORITHM, macKey);
+                try {
+                    mac.update(KINDS, kind, 1);
+                    if (id != null) {
+                        mac.update(id);
+                    }
+                    mac.update(nonce);
+                    mac.update(record.limit(start + plainLength).position(start));
+                    mac.doFinal(tags[0], 0);
+                } finally {
+                    engine.releaseMac(mac);
+                }
+                record.limit(start + plainLength + suite.getTagLength()).get(start + plainLength, tags[1]);
+                if (!MessageDigest.isEqual(tags[0], tags[1])) {
+                    throw new IOException("Record at offset " + offset + " is corrupt");
+                }
+                record.limit(start + plainLength);
+            }
+            Cipher cipher = engine.acquireCipher(suite.getTransformation(), Cipher.DECRYPT_MODE, cipherKey, suite.parameters(nonce));
+            try {
+                if (suite.isAead()) {
+                    cipher.updateAAD(KINDS, kind, 1);
+                    if (id != null) {
+                        cipher.updateAAD(id);
+                    }
+                }
+                record.position(start);
+                return CryptoEngine.process(cipher, record, out);
+            } finally {
+                engine.releaseCipher(cipher);
+            }
+        } catch (AEADBadTagException e) {
+            throw new IOException("Record at offset " + offset + " is corrupt", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to decrypt record at offset " + offset, e);
+        }
+    }
+
+    int plainLength(ByteBuffer record, long offset) throws IOException {
+        int payloadLength = record.getInt(0);
+        int overhead = suite.getNonceLength() + suite.getTagLength();
+        if (payloadLength != record.limit() - Integer.BYTES || payloadLength < overhead) {
+            throw new IOException("Record at offset " + offset + " is damaged");
+        }
+        return payloadLength - overhead;
+    }
+}
@@ -0,0 +1,38 @@
+package model;
+
+// Location of a sealed record that is not file data: the index, a journal record or the compression dictionary.
+// The kind says which of them it is, in the same terms the record's seal binds.
+class RecordRef {
+    private final long offset;
+    private final int length;
+    private final byte kind;
+    private final int size;
+
+    RecordRef(long offset, int length, byte kind) {
+        this(offset, length, kind, 0);
+    }
+
+    // The size is the plaintext length where the container records it, zero elsewhere
+    RecordRef(long offset, int length, byte kind, int size) {
+        this.offset = offset;
+        this.length = length;
+        this.kind = kind;
+        this.size = size;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    byte getKind() {
+        return kind;
+    }
+
+    int getSize() {
+        return size;
+    }
+}
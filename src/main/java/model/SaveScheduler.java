@@ -0,0 +1,89 @@
+package model;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind saving: mutations only ask for a save, which runs once no further request has come in for the
+// configured delay, so a burst of edits is written by a single save. A steady stream of edits is still saved
+// at least every maxDelay. All saves run on one writer thread and therefore never overlap.
+public class SaveScheduler {
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "container-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Runnable saveAction;
+    private final long delayMillis;
+    private final long maxDelayMillis;
+    private ScheduledFuture<?> pending;
+    private long firstRequestNanos;
+    private long generation;
+
+    public SaveScheduler(Runnable saveAction, long delayMillis, long maxDelayMillis) {
+        this.saveAction = saveAction;
+        this.delayMillis = delayMillis;
+        this.maxDelayMillis = Math.max(delayMillis, maxDelayMillis);
+    }
+
+    // Marks the container dirty; any save that is waiting is pushed back, up to maxDelay after the first request
+    public synchronized void requestSave() {
+        if (writer.isShutdown()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (pending == null) {
+            firstRequestNanos = now;
+        } else {
+            pending.cancel(false);
+        }
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(now - firstRequestNanos);
+        long delay = Math.max(0, Math.min(delayMillis, maxDelayMillis - waitedMillis));
+        long scheduled = ++generation;
+        pending = writer.schedule(() -> runSave(scheduled), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runSave(long scheduled) {
+        synchronized (this) {
+            if (scheduled != generation) {
+                return;
+            }
+            pending = null;
+        }
+        saveAction.run();
+    }
+
+    // Saves right away on the writer thread, after any save that is already running, and waits for it. Once the
+    // scheduler is shut down the last save has been written and there is nothing left to flush.
+    public void flush() {
+        Future<?> save;
+        synchronized (this) {
+            if (writer.isShutdown()) {
+                return;
+            }
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+            generation++;
+            save = writer.submit(saveAction);
+        }
+        try {
+            save.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void shutdown() {
+        flush();
+        synchronized (this) {
+            writer.shutdown();
+        }
+    }
+}
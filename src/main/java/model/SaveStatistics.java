@@ -0,0 +1,117 @@
+package model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// What a save had to do: bytes read from the workspace, how many of them were already stored
+// and could be referenced instead of written, and how long it took. Entries that were stored without
+// compression are listed with the CPU time compressing them would have cost at this save's rate.
+public class SaveStatistics {
+    // Used when nothing was compressed in this save to measure the rate on: roughly default deflate on media
+    private static final double FALLBACK_COMPRESS_NANOS_PER_BYTE = 20;
+
+    private final long startNanos = System.nanoTime();
+    private long elapsedNanos;
+    private long bytesRead;
+    private long bytesDeduplicated;
+    private long bytesStored;
+    private long bytesCopied;
+    private long bytesCompressed;
+    private long compressNanos;
+    private final Map<String, Long> uncompressedEntries = new LinkedHashMap<>();
+
+    synchronized void addRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    synchronized void addDeduplicated(long bytes) {
+        bytesDeduplicated += bytes;
+    }
+
+    synchronized void addStored(long bytes) {
+        bytesStored += bytes;
+    }
+
+    synchronized void addCopied(long bytes) {
+        bytesCopied += bytes;
+    }
+
+    synchronized void addCompressed(long bytes, long cpuNanos) {
+        bytesCompressed += bytes;
+        compressNanos += cpuNanos;
+    }
+
+    synchronized void addUncompressed(String entryPath, long bytes) {
+        uncompressedEntries.merge(entryPath, bytes, Long::sum);
+    }
+
+    synchronized void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesDeduplicated() {
+        return bytesDeduplicated;
+    }
+
+    public long getBytesStored() {
+        return bytesStored;
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    // Entry paths and sizes of the entries that were judged incompressible
+    public synchronized Map<String, Long> getUncompressedEntries() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(uncompressedEntries));
+    }
+
+    public synchronized long getUncompressedBytes() {
+        long total = 0;
+        for (long bytes : uncompressedEntries.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    public synchronized long getCompressionCpuMillis() {
+        return compressNanos / 1_000_000;
+    }
+
+    public synchronized long getEstimatedCpuSavedMillis(long bytes) {
+        double nanosPerByte = bytesCompressed > 0 ? (double) compressNanos / bytesCompressed : FALLBACK_COMPRESS_NANOS_PER_BYTE;
+        return (long) (bytes * nanosPerByte / 1_000_000);
+    }
+
+    public synchronized long getEstimatedCpuSavedMillis() {
+        return getEstimatedCpuSavedMillis(getUncompressedBytes());
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    // Bytes read for every byte that had to be written, 1.0 when nothing was shared
+    public double getDeduplicationRatio() {
+        long unique = bytesRead - bytesDeduplicated;
+        return unique <= 0 ? (bytesRead == 0 ? 1.0 : Double.POSITIVE_INFINITY) : (double) bytesRead / unique;
+    }
+
+    public double getThroughputMBps() {
+        return elapsedNanos == 0 ? 0 : (bytesRead / (1024.0 * 1024.0)) / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("read %.1f MB, %.1f MB deduplicated (ratio %.2f), %.1f MB stored, %.1f MB copied in %d ms (%.1f MB/s), "
+                        + "compression CPU %d ms, %d entries (%.1f MB) stored uncompressed saving about %d ms CPU",
+                bytesRead / 1048576.0, bytesDeduplicated / 1048576.0, getDeduplicationRatio(), bytesStored / 1048576.0,
+                bytesCopied / 1048576.0, getElapsedMillis(), getThroughputMBps(), getCompressionCpuMillis(),
+                uncompressedEntries.size(), getUncompressedBytes() / 1048576.0, getEstimatedCpuSavedMillis());
+    }
+}
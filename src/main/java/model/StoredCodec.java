@@ -0,0 +1,33 @@
+package model;
+
+import java.io.IOException;
+
+// Keeps data as it is
+public class StoredCodec implements CompressionCodec {
+    @Override
+    public byte getId() {
+        return ChunkRef.CODEC_STORED;
+    }
+
+    @Override
+    public String getName() {
+        return "stored";
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+        if (srcLen > dstLen) {
+            return -1;
+        }
+        System.arraycopy(src, srcOff, dst, dstOff, srcLen);
+        return srcLen;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        if (srcLen != dstLen) {
+            throw new IOException("Stored block has " + srcLen + " bytes instead of " + dstLen);
+        }
+        System.arraycopy(src, srcOff, dst, dstOff, srcLen);
+    }
+}
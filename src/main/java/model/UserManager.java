@@ -24,14 +24,71 @@ public class UserManager {
         users = KeyManager.loadUsers(masterKey, masterKeyFile);
     }
 
-    public void addUser(String username, String password) throws NoSuchAlgorithmException {
+    public void addUser(String username, String password) throws Exception {
         if (users.containsKey(username)) {
             throw new IllegalArgumentException("User already exists!");
         }
         SecretKey userKey = KeyManager.generateKey();
         User user = new User(username, password, userKey);
         users.put(username, user);
-        saveMasterKeyAndUsers();
+        try {
+            saveMasterKeyAndUsers();
+        } catch (Exception e) {
+            users.remove(username);
+            throw e;
+        }
+    }
+
+    // Gives the user a new key. The containers only have their key slots changed, and both keys open them until the
+    // new key is saved, so the user file and the containers never disagree, not even after a crash halfway. If
+    // adding the new key or saving it fails, the containers are put back as they were.
+    public User rotateKey(String username, String password, List<File> containers) throws Exception {
+        User user = authenticate(username, password);
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid username or password!");
+        }
+        SecretKey oldKey = user.getEncryptionKey();
+        SecretKey newKey = KeyManager.generateKey();
+        EncryptedContainer current = new EncryptedContainer(oldKey);
+        List<File> added = new ArrayList<>();
+        User rotatedUser = new User(username, password, newKey);
+        try {
+            for (File container : containers) {
+                current.addKey(container, newKey);
+                added.add(container);
+            }
+            users.put(username, rotatedUser);
+            saveMasterKeyAndUsers();
+        } catch (Exception e) {
+            users.put(username, user);
+            for (File container : added) {
+                try {
+                    current.removeKey(container, newKey);
+                } catch (Exception rollback) {
+                    e.addSuppressed(rollback);
+                }
+            }
+            throw e;
+        }
+        // The new key is saved, so the old one can go; a container that keeps its old slot still opens with both
+        EncryptedContainer rotated = new EncryptedContainer(newKey);
+        for (File container : containers) {
+            try {
+                rotated.removeKey(container, oldKey);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return rotatedUser;
+    }
+
+    // Another user's key, so a container can be shared with them through its key slots
+    public SecretKey getMemberKey(String username) {
+        User user = users.get(username);
+        if (user == null) {
+            throw new IllegalArgumentException("User not found!");
+        }
+        return user.getEncryptionKey();
     }
 
     public User authenticate(String username, String password) {
@@ -50,18 +107,12 @@ public class UserManager {
         }
     }
 
-    private void saveMasterKeyAndUsers() {
-        try {
-            KeyManager.saveKeyAndUsers(masterKey, masterKeyFile, users);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    private void saveMasterKeyAndUsers() throws Exception {
+        KeyManager.saveKeyAndUsers(masterKey, masterKeyFile, users);
     }
 
     private Cipher getCipher(int mode, String password) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
         SecretKeySpec keySpec = new SecretKeySpec(password != null ? password.getBytes() : masterKey.getEncoded(), ALGORITHM);
-        cipher.init(mode, keySpec);
-        return cipher;
+        return CryptoEngine.cipher(ALGORITHM, mode, keySpec, null);
     }
 }
\ No newline at end of file
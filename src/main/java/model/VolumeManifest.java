@@ -0,0 +1,64 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Describes where the data of a multi-volume container lives. Records are addressed as
+// volume number * volume size + offset in that volume and never span two volumes.
+// Volume paths are stored relative to the container file when they sit next to it.
+public class VolumeManifest {
+    private final long volumeSize;
+    private final String generation;
+    private final List<String> volumes;
+    private final long dataEnd;
+
+    public VolumeManifest(long volumeSize, String generation, List<String> volumes, long dataEnd) {
+        this.volumeSize = volumeSize;
+        this.generation = generation;
+        this.volumes = Collections.unmodifiableList(new ArrayList<>(volumes));
+        this.dataEnd = dataEnd;
+    }
+
+    public long getVolumeSize() {
+        return volumeSize;
+    }
+
+    // Every full rewrite starts a new generation, so new volumes never overwrite the ones still in use
+    public String getGeneration() {
+        return generation;
+    }
+
+    public List<String> getVolumes() {
+        return volumes;
+    }
+
+    public long getDataEnd() {
+        return dataEnd;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(volumeSize);
+        out.writeUTF(generation);
+        out.writeLong(dataEnd);
+        out.writeInt(volumes.size());
+        for (String volume : volumes) {
+            out.writeUTF(volume);
+        }
+    }
+
+    static VolumeManifest read(DataInputStream in) throws IOException {
+        long volumeSize = in.readLong();
+        String generation = in.readUTF();
+        long dataEnd = in.readLong();
+        int count = in.readInt();
+        List<String> volumes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            volumes.add(in.readUTF());
+        }
+        return new VolumeManifest(volumeSize, generation, volumes, dataEnd);
+    }
+}
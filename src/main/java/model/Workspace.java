@@ -0,0 +1,349 @@
+package model;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Working copy of an open container. The index is the source of truth for what the container holds;
+// file data is only decrypted into the directory when it is first needed, and clean files are evicted
+// again, least recently used first, once the materialized data exceeds the disk budget. Renames, moves, new
+// folders and deletes only change the index and are committed as a small journal record when nothing else changed.
+// Everything that changes the workspace holds the changes lock, a save for as long as it runs; the monitor only
+// guards the index for the questions the user interface asks, so those are answered while a save is running.
+public class Workspace {
+    private final EncryptedContainer container;
+    private final File containerFile;
+    private final Path directory;
+    private final long diskBudget;
+    private final LinkedHashMap<String, Long> materialized = new LinkedHashMap<>(16, 0.75f, true);
+    private ContainerIndex index;
+    private long materializedBytes;
+    private final IndexJournal journal = new IndexJournal();
+    private final ReentrantLock changes = new ReentrantLock();
+
+    public Workspace(EncryptedContainer container, File containerFile, ContainerIndex index, Path directory, long diskBudget) {
+        this.container = container;
+        this.containerFile = containerFile;
+        this.index = index;
+        this.directory = directory;
+        this.diskBudget = diskBudget;
+    }
+
+    public File getContainerFile() {
+        return containerFile;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized ContainerEntry getEntry(String entryPath) {
+        return index.get(entryPath);
+    }
+
+    public synchronized boolean exists(String entryPath) {
+        return index.contains(entryPath) || Files.exists(resolve(entryPath));
+    }
+
+    // Whether the file is in the container as it is in the workspace, or only in the container, rather than waiting
+    // for a save
+    public synchronized boolean isSaved(Path path) {
+        String entryPath = ContainerIndex.toEntryPath(directory.relativize(path));
+        ContainerEntry entry = index.get(entryPath);
+        return entry != null && !entry.isDirectory() && !isModified(entryPath);
+    }
+
+    public synchronized boolean isDirectory(String entryPath) {
+        ContainerEntry entry = index.get(entryPath);
+        return entry != null ? entry.isDirectory() : Files.isDirectory(resolve(entryPath));
+    }
+
+    public Path resolve(String entryPath) {
+        return entryPath.isEmpty() ? directory : directory.resolve(entryPath);
+    }
+
+    // Decrypts the entry into the workspace on first use and returns its location on disk
+    public Path materialize(String entryPath) throws IOException {
+        changes.lock();
+        try {
+            return materializeEntry(entryPath);
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    private Path materializeEntry(String entryPath) throws IOException {
+        Path target = resolve(entryPath);
+        ContainerEntry entry = index.get(entryPath);
+        if (entry == null) {
+            return target;
+        }
+        if (entry.isDirectory()) {
+            Files.createDirectories(target);
+            return target;
+        }
+        if (materialized.get(entryPath) == null && !Files.exists(target)) {
+            container.extractEntry(containerFile, index, entry, target);
+            materialized.put(entryPath, entry.getSize());
+            materializedBytes += entry.getSize();
+            evict(entryPath);
+        }
+        return target;
+    }
+
+    public void rename(String from, String to) throws IOException {
+        changes.lock();
+        try {
+            synchronized (this) {
+                renameTree(from, to);
+            }
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    private void renameTree(String from, String to) throws IOException {
+        index.moveTree(from, to);
+        Path source = resolve(from);
+        Path target = resolve(to);
+        if (Files.exists(source)) {
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Map<String, Long> moved = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<String, Long>> it = materialized.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> item = it.next();
+            if (isInTree(item.getKey(), from)) {
+                moved.put(to + item.getKey().substring(from.length()), item.getValue());
+                it.remove();
+            }
+        }
+        materialized.putAll(moved);
+        journal.rename(from, to);
+    }
+
+    public void delete(String entryPath) throws IOException {
+        changes.lock();
+        try {
+            synchronized (this) {
+                deleteTree(entryPath);
+            }
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    private void deleteTree(String entryPath) throws IOException {
+        index.removeTree(entryPath);
+        for (Iterator<Map.Entry<String, Long>> it = materialized.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> item = it.next();
+            if (isInTree(item.getKey(), entryPath)) {
+                materializedBytes -= item.getValue();
+                it.remove();
+            }
+        }
+        deleteRecursively(resolve(entryPath));
+        journal.remove(entryPath);
+    }
+
+    public void addDirectory(String entryPath) throws IOException {
+        changes.lock();
+        try {
+            Path target = resolve(entryPath);
+            Files.createDirectories(target);
+            long lastModified = Files.getLastModifiedTime(target).toMillis();
+            synchronized (this) {
+                index.put(ContainerEntry.directory(entryPath, lastModified));
+            }
+            journal.addDirectory(entryPath, lastModified);
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    // The saved index plus anything that was added to the workspace directory but not saved yet
+    public synchronized ContainerIndex snapshotIndex() throws IOException {
+        ContainerIndex snapshot = index.copy();
+        for (Path path : listDirectory()) {
+            String entryPath = ContainerIndex.toEntryPath(directory.relativize(path));
+            if (!snapshot.contains(entryPath)) {
+                snapshot.put(Files.isDirectory(path)
+                        ? ContainerEntry.directory(entryPath, 0)
+                        : new ContainerEntry(entryPath, false, Files.size(path), 0, 0, List.of()));
+            }
+        }
+        return snapshot;
+    }
+
+    public boolean hasChanges() throws IOException {
+        changes.lock();
+        try {
+            return !journal.isEmpty() || hasDataChanges();
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    private boolean hasDataChanges() throws IOException {
+        for (Path path : listDirectory()) {
+            String entryPath = ContainerIndex.toEntryPath(directory.relativize(path));
+            if (!index.contains(entryPath) || isModified(entryPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The container is written outside the monitor: nothing else changes the index while the changes lock is held,
+    // so the save reads it as it is and only the switch to the saved index waits for the readers
+    public SaveStatistics save(ProgressListener listener, CancellationToken cancellation) throws Exception {
+        changes.lock();
+        try {
+            if (!journal.isEmpty() && !hasDataChanges() && container.commitJournal(containerFile, journal)) {
+                journal.clear();
+                return container.getLastSaveStatistics();
+            }
+            return saved(container.saveIncrementalWithProgress(containerFile, index, directory, this::isModified, listener, cancellation));
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    // Saves pending changes while rewriting the container around a newly trained compression dictionary
+    public SaveStatistics rebuildDictionary(ProgressListener listener, CancellationToken cancellation) throws Exception {
+        changes.lock();
+        try {
+            return saved(container.rebuildDictionaryWithProgress(containerFile, index, directory, this::isModified, listener, cancellation));
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    // Lets the holder of another key open the container too, or stops it from doing so. Only the key slots in the
+    // header change; a container of an older format is brought up to date by a full save first.
+    public void addMember(SecretKey memberKey, ProgressListener listener) throws Exception {
+        changes.lock();
+        try {
+            prepareKeySlots(listener);
+            container.addKey(containerFile, memberKey);
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    public void removeMember(SecretKey memberKey, ProgressListener listener) throws Exception {
+        changes.lock();
+        try {
+            prepareKeySlots(listener);
+            container.removeKey(containerFile, memberKey);
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    private void prepareKeySlots(ProgressListener listener) throws Exception {
+        if (!container.hasKeySlots(containerFile)) {
+            saved(container.saveWorkspaceWithProgress(containerFile, index, directory, this::isModified, listener, CancellationToken.NONE));
+        }
+    }
+
+    private SaveStatistics saved(ContainerIndex savedIndex) throws IOException {
+        synchronized (this) {
+            index = savedIndex;
+        }
+        journal.clear();
+
+        // Files that were just written from disk are now clean copies that count against the budget
+        for (Path path : listDirectory()) {
+            String entryPath = ContainerIndex.toEntryPath(directory.relativize(path));
+            ContainerEntry entry = index.get(entryPath);
+            if (entry != null && !entry.isDirectory() && !materialized.containsKey(entryPath)) {
+                materialized.put(entryPath, entry.getSize());
+                materializedBytes += entry.getSize();
+            }
+        }
+        evict(null);
+        return container.getLastSaveStatistics();
+    }
+
+    // Removes every materialized file, used when the container is closed
+    public void clear() throws IOException {
+        changes.lock();
+        try {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    if (!path.equals(directory)) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+            materialized.clear();
+            materializedBytes = 0;
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    private boolean isModified(String entryPath) {
+        ContainerEntry entry = index.get(entryPath);
+        Path path = resolve(entryPath);
+        if (entry == null || entry.isDirectory() || !Files.isRegularFile(path)) {
+            return false;
+        }
+        try {
+            return Files.size(path) != entry.getSize() || Files.getLastModifiedTime(path).toMillis() != entry.getLastModified();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    // Drops least recently used files until the budget is met; modified files are kept until they are saved
+    // and the file that is being handed out right now is never dropped
+    private void evict(String keep) {
+        for (Iterator<Map.Entry<String, Long>> it = materialized.entrySet().iterator(); it.hasNext() && materializedBytes > diskBudget; ) {
+            Map.Entry<String, Long> item = it.next();
+            if (item.getKey().equals(keep) || isModified(item.getKey())) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(resolve(item.getKey()));
+                materializedBytes -= item.getValue();
+                it.remove();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private List<Path> listDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return new ArrayList<>(paths.filter(path -> !path.equals(directory) && !FileTransfer.isPartial(path)).toList());
+        }
+    }
+
+    private static boolean isInTree(String entryPath, String root) {
+        return entryPath.equals(root) || entryPath.startsWith(root + "/");
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
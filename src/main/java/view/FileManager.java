@@ -3,10 +3,24 @@ package view;
 import config.ConfigManager;
 import controller.ContainerManager;
 import controller.ContextMenuManager;
+import model.CancellationToken;
+import model.CipherSuite;
+import model.ContainerEntry;
+import model.ContainerIndex;
+import model.ContainerOptions;
 import model.EncryptedContainer;
+import model.FileTransfer;
+import model.ImportCheckpoint;
 import model.KeyManager;
+import model.OperationExecutor;
+import model.Progress;
+import model.ProgressListener;
+import model.ProgressTracker;
+import model.SaveScheduler;
+import model.SaveStatistics;
 import model.User;
 import model.UserManager;
+import model.Workspace;
 
 import javax.crypto.SecretKey;
 import javax.swing.*;
@@ -17,13 +31,17 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 public class FileManager {
@@ -31,14 +49,19 @@ public class FileManager {
     private final JFrame frame;
     private final JTree tree;
     private EncryptedContainer container;
+    private Workspace workspace;
     private final DefaultMutableTreeNode root;
     private Path tempDir;
     private UserManager userManager;
     private User currentUser;
     private final JProgressBar progressBar;
+    private final ProgressBarListener progressListener;
     private SecretKey masterKey;
     private final Map<String, String> config;
     private final ContextMenuManager contextMenuManager;
+    private final SaveScheduler saveScheduler;
+    private final OperationExecutor operations;
+    private final Set<CancellationToken> cancellations = ConcurrentHashMap.newKeySet();
     private ContainerManager containerManager;
     private JButton createButton;
     private JButton importButton;
@@ -57,12 +80,21 @@ public class FileManager {
         frame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                new Thread(FileManager.this::performExitTasksWithProgress).start();
+                exitCFM();
             }
         });
 
         // Load config
         config = ConfigManager.loadConfig();
+        operations = new OperationExecutor(ConfigManager.getOperationThreads());
+        saveScheduler = new SaveScheduler(this::saveInBackground, ConfigManager.getSaveDelayMillis(), ConfigManager.getMaxSaveDelayMillis());
+        // Calibrate the cipher suites once in the background and keep the result for later runs
+        CipherSuite calibrated = ConfigManager.getCalibratedCipherSuite();
+        if (calibrated != null) {
+            CipherSuite.setFastest(calibrated);
+        } else {
+            CipherSuite.calibrateInBackground(suite -> SwingUtilities.invokeLater(() -> ConfigManager.setCalibratedCipherSuite(config, suite)));
+        }
 
         // Check if it's the first run and show the tutorial window if needed
         if (ConfigManager.isFirstRun()) {
@@ -114,21 +146,30 @@ public class FileManager {
         // Initialize progress bar
         progressBar = new JProgressBar();
         progressBar.setStringPainted(true);
+        progressListener = new ProgressBarListener(progressBar);
         frame.add(progressBar, BorderLayout.NORTH);
 
         // ContextMenuManager initialization
-        contextMenuManager = new ContextMenuManager(tree, tempDir, treeModel, this, progressBar);
+        contextMenuManager = new ContextMenuManager(tree, treeModel, this, progressBar);
 
         // Control buttons
         JPanel panel = new JPanel();
         JButton createButton = new JButton("New Container");
         JButton importButton = new JButton("Open Container");
         JButton importFile = new JButton("Import File");
+        JButton rebuildDictionary = new JButton("Rebuild Dictionary");
+        JButton members = new JButton("Members");
+        JButton rotateKey = new JButton("Rotate Key");
+        JButton cancel = new JButton("Cancel");
         JButton exitCFM = new JButton("Exit");
 
         panel.add(createButton);
         panel.add(importButton);
         panel.add(importFile);
+        panel.add(rebuildDictionary);
+        panel.add(members);
+        panel.add(rotateKey);
+        panel.add(cancel);
         panel.add(exitCFM);
         frame.add(panel, BorderLayout.SOUTH);
 
@@ -136,6 +177,10 @@ public class FileManager {
         createButton.addActionListener(e -> createContainer());
         importButton.addActionListener(e -> importContainer());
         importFile.addActionListener(e -> importFilesOrDirectories());
+        rebuildDictionary.addActionListener(e -> rebuildDictionary());
+        members.addActionListener(e -> manageMembers());
+        rotateKey.addActionListener(e -> rotateKey());
+        cancel.addActionListener(e -> cancelRunning());
         exitCFM.addActionListener(e -> exitCFM());
 
         frame.setVisible(true);
@@ -167,48 +212,52 @@ public class FileManager {
         int result = fileChooser.showOpenDialog(frame);
         if (result == JFileChooser.APPROVE_OPTION) {
             File[] selectedFiles = fileChooser.getSelectedFiles();
-            new Thread(() -> {
+            // Waits for the save at the end, so it holds no lock on the container
+            operations.submit("Import files", OperationExecutor.Priority.NORMAL, () -> {
+                CancellationToken cancellation = startCancellable();
+                ImportCheckpoint checkpoint = null;
                 try {
                     contextMenuManager.resetProgressBar();
-                    for (File file : selectedFiles) {
-                        Path targetPath = tempDir.resolve(file.getName());
-                        if (file.isDirectory()) {
-                            copyDirectory(file.toPath(), targetPath);
-                        } else {
-                            Files.copy(file.toPath(), targetPath, StandardCopyOption.REPLACE_EXISTING);
-                        }
+                    Workspace current = workspace;
+                    if (current != null) {
+                        // Saves along the way, so importing the same files again skips what is already in the container
+                        checkpoint = new ImportCheckpoint(Path.of(current.getContainerFile().getPath() + ".import"), ConfigManager.getImportCheckpointBytes(),
+                                current::isSaved, () -> saveDuringImport(current));
+                    }
+                    ProgressTracker progress = new ProgressTracker(progressListener, Progress.Phase.IMPORTING, ConfigManager.getProgressUpdateRate(), cancellation);
+                    FileTransfer.copyInto(Arrays.stream(selectedFiles).map(File::toPath).toList(), tempDir, ConfigManager.getImportThreads(), progress, checkpoint);
+                    progress.finish();
+                    saveScheduler.flush(); // Save the container immediately after importing
+                    if (checkpoint != null) {
+                        checkpoint.delete();
                     }
-                    SwingUtilities.invokeLater(() -> loadDirectory(tempDir, root));
-                    saveCurrentContainerWithProgress(); // Save the container immediately after importing
                     SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "Files/Directories imported and container saved successfully."));
                 } catch (IOException e) {
                     e.printStackTrace();
-                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "Error while importing files/directories: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+                    // Keep whatever was imported before the errors
+                    String resume = "";
+                    try {
+                        if (checkpoint != null) {
+                            checkpoint.commit();
+                            resume = "\nImport the same files again to continue where this import stopped.";
+                        } else {
+                            saveScheduler.flush();
+                        }
+                    } catch (IOException commitError) {
+                        commitError.printStackTrace();
+                    }
+                    boolean cancelled = e instanceof InterruptedIOException || e instanceof ClosedByInterruptException;
+                    String message = (cancelled ? "Import cancelled." : "Error while importing files/directories: " + e.getMessage()) + resume;
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, message, "Import", JOptionPane.WARNING_MESSAGE));
                 } finally {
+                    cancellations.remove(cancellation);
                     refreshTree();
                     contextMenuManager.updateProgressBarCompleted();
                 }
-            }).start();
+            });
         }
     }
 
-    private void copyDirectory(Path source, Path target) throws IOException {
-        Files.walk(source).forEach(sourcePath -> {
-            try {
-                Path targetPath = target.resolve(source.relativize(sourcePath));
-                if (Files.isDirectory(sourcePath)) {
-                    if (!Files.exists(targetPath)) {
-                        Files.createDirectory(targetPath);
-                    }
-                } else {
-                    Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
-    }
-
     private boolean showKeyFileDialog() {
         JFileChooser fileChooser = getjFileChooser();
 
@@ -382,22 +431,27 @@ public class FileManager {
             result = saveChooser.showSaveDialog(frame);
             if (result == JFileChooser.APPROVE_OPTION) {
                 File saveFile = saveChooser.getSelectedFile();
-                new Thread(() -> {
+                operations.submit("Create container", OperationExecutor.Priority.NORMAL, saveFile, OperationExecutor.Access.WRITE, () -> {
+                    CancellationToken cancellation = startCancellable();
                     try {
                         contextMenuManager.resetProgressBar();
-                        container = new EncryptedContainer(currentUser.getEncryptionKey());
-                        container.saveContainerWithProgress(saveFile, selectedDir.toPath(), progressBar);
+                        container = new EncryptedContainer(currentUser.getEncryptionKey(), createContainerOptions());
+                        container.saveContainerWithProgress(saveFile, selectedDir.toPath(), progressListener, cancellation);
+                        logSaveStatistics("Container created: " + saveFile, container.getLastSaveStatistics());
                         JOptionPane.showMessageDialog(frame, "Container created: " + saveFile.getAbsolutePath());
                         config.put("lastContainerPath_" + currentUser.getUsername(), saveFile.getAbsolutePath());
                         ConfigManager.saveConfig(config);
                         importContainer();  // Immediately open the container after creation
                         contextMenuManager.enableContextMenuItems(); // Enable context menu
+                    } catch (InterruptedIOException | ClosedByInterruptException e) {
+                        System.out.println("Container creation cancelled: " + saveFile);
                     } catch (Exception e) {
                         e.printStackTrace();
                     } finally {
+                        cancellations.remove(cancellation);
                         contextMenuManager.updateProgressBarCompleted();
                     }
-                }).start();
+                });
             }
         }
     }
@@ -408,25 +462,56 @@ public class FileManager {
         int result = fileChooser.showOpenDialog(frame);
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            new Thread(() -> {
+            // Saves what is open first, so like an import it holds no lock on a container
+            operations.submit("Open container", OperationExecutor.Priority.INTERACTIVE, () -> {
+                CancellationToken cancellation = startCancellable();
                 try {
                     contextMenuManager.resetProgressBar();
                     SwingUtilities.invokeLater(() -> progressBar.setValue(0));
-                    container = new EncryptedContainer(currentUser.getEncryptionKey());
-                    container.loadContainerWithProgress(file, tempDir, progressBar);
-                    SwingUtilities.invokeLater(() -> loadDirectory(tempDir, root));
+                    if (workspace != null) {
+                        saveScheduler.flush();
+                        workspace.clear();
+                    }
+                    container = new EncryptedContainer(currentUser.getEncryptionKey(), createContainerOptions());
+                    ContainerIndex index = container.readIndex(file);
+                    if (index == null) {
+                        // Older formats have no index and are extracted in full
+                        container.loadContainerWithProgress(file, tempDir, progressListener, cancellation);
+                        index = new ContainerIndex();
+                    }
+                    // Only the index is loaded, file data is decrypted when a file is first used
+                    workspace = new Workspace(container, file, index, tempDir, ConfigManager.getWorkspaceBudget());
+                    SwingUtilities.invokeLater(this::refreshTree);
                     config.put("lastContainerPath_" + currentUser.getUsername(), file.getAbsolutePath());
                     ConfigManager.saveConfig(config);
                     contextMenuManager.enableContextMenuItems(); // Enable context menu
+                } catch (InterruptedIOException | ClosedByInterruptException e) {
+                    System.out.println("Opening the container cancelled: " + file);
                 } catch (Exception e) {
                     e.printStackTrace();
                 } finally {
+                    cancellations.remove(cancellation);
                     contextMenuManager.updateProgressBarCompleted();
                 }
-            }).start();
+            });
         }
     }
 
+    private ContainerOptions createContainerOptions() {
+        ContainerOptions options = new ContainerOptions();
+        options.setVolumeSize(ConfigManager.getVolumeSize());
+        options.setVolumeDirectories(ConfigManager.getVolumeDirectories());
+        options.setDeduplication(ConfigManager.isDeduplication());
+        options.setCompressionThreads(ConfigManager.getCompressionThreads());
+        options.setSolid(ConfigManager.isSolid());
+        options.setDictionary(ConfigManager.isCompressionDictionary());
+        options.setCompressionLevel(ConfigManager.getCompressionLevel());
+        options.setCompressionCodec(ConfigManager.getCompressionCodec());
+        options.setCipherSuite(ConfigManager.getCipherSuite());
+        options.setProgressUpdateRate(ConfigManager.getProgressUpdateRate());
+        return options;
+    }
+
     public void loadDirectory(Path path, DefaultMutableTreeNode parent) {
         try (Stream<Path> paths = Files.list(path)) {
             List<Path> fileList = paths.toList();
@@ -446,29 +531,180 @@ public class FileManager {
         ((DefaultTreeModel) tree.getModel()).reload(parent);
     }
 
-    public void saveCurrentContainer() {
-        if (container != null && currentUser != null) {
-            String lastContainerPath = config.get("lastContainerPath_" + currentUser.getUsername());
-            if (lastContainerPath != null) {
-                try {
-                    File containerFile = new File(lastContainerPath);
-                    container.saveContainerWithProgress(containerFile, tempDir, progressBar);
-                    System.out.println("Container saved: " + lastContainerPath);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    JOptionPane.showMessageDialog(frame, "Error while saving container: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    public void loadIndex(ContainerIndex index, DefaultMutableTreeNode parent) {
+        parent.removeAllChildren();
+        Map<String, DefaultMutableTreeNode> nodes = new HashMap<>();
+        for (ContainerEntry entry : index.getEntries()) {
+            nodeForPath(entry.getPath(), nodes, parent);
+        }
+
+        // Update the tree model
+        ((DefaultTreeModel) tree.getModel()).reload(parent);
+    }
+
+    private DefaultMutableTreeNode nodeForPath(String path, Map<String, DefaultMutableTreeNode> nodes, DefaultMutableTreeNode parent) {
+        if (path.isEmpty()) {
+            return parent;
+        }
+        DefaultMutableTreeNode node = nodes.get(path);
+        if (node == null) {
+            int slash = path.lastIndexOf('/');
+            DefaultMutableTreeNode parentNode = nodeForPath(slash < 0 ? "" : path.substring(0, slash), nodes, parent);
+            node = new DefaultMutableTreeNode(path.substring(slash + 1));
+            parentNode.add(node);
+            nodes.put(path, node);
+        }
+        return node;
+    }
+
+    private void rebuildDictionary() {
+        Workspace current = workspace;
+        if (current != null) {
+            operations.submit("Rebuild dictionary", OperationExecutor.Priority.BACKGROUND, current.getContainerFile(), OperationExecutor.Access.WRITE,
+                    this::rebuildDictionaryWithProgress);
+        }
+    }
+
+    // Retrains the compression dictionary on what the container holds now, saving pending changes along the way
+    void rebuildDictionaryWithProgress() {
+        if (workspace != null && currentUser != null) {
+            CancellationToken cancellation = startCancellable();
+            try {
+                contextMenuManager.resetProgressBar();
+                SaveStatistics statistics = workspace.rebuildDictionary(progressListener, cancellation);
+                logSaveStatistics("Compression dictionary rebuilt: " + workspace.getContainerFile(), statistics);
+            } catch (InterruptedIOException | ClosedByInterruptException e) {
+                System.out.println("Dictionary rebuild cancelled, the container is unchanged");
+            } catch (Exception e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() ->
+                        JOptionPane.showMessageDialog(frame, "Error while rebuilding the dictionary: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE)
+                );
+            } finally {
+                cancellations.remove(cancellation);
+                contextMenuManager.updateProgressBarCompleted();
+            }
+        }
+    }
+
+    // Shares the open container with another user, or stops sharing it, through the key slots in its header
+    private void manageMembers() {
+        if (workspace == null || currentUser == null) {
+            return;
+        }
+        String username = JOptionPane.showInputDialog(frame, "Username of the member:", "Members", JOptionPane.QUESTION_MESSAGE);
+        if (username == null || username.isBlank()) {
+            return;
+        }
+        Object[] actions = {"Add", "Remove", "Cancel"};
+        int action = JOptionPane.showOptionDialog(frame, "Add or remove " + username + "?", "Members",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, actions, actions[0]);
+        if (action != 0 && action != 1) {
+            return;
+        }
+        operations.submit("Update members", OperationExecutor.Priority.NORMAL, workspace.getContainerFile(), OperationExecutor.Access.WRITE, () -> {
+            try {
+                contextMenuManager.resetProgressBar();
+                SecretKey memberKey = userManager.getMemberKey(username.trim());
+                if (action == 0) {
+                    workspace.addMember(memberKey, progressListener);
+                } else {
+                    workspace.removeMember(memberKey, progressListener);
+                }
+                System.out.println((action == 0 ? "Member added: " : "Member removed: ") + username.trim());
+            } catch (Exception e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() ->
+                        JOptionPane.showMessageDialog(frame, "Error while updating members: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE)
+                );
+            } finally {
+                contextMenuManager.updateProgressBarCompleted();
+            }
+        });
+    }
+
+    // Gives the user a new key and moves the chosen containers over to it. When the open container is one of them,
+    // the rotation holds its write lock, saves what is pending and opens it again with the new key.
+    private void rotateKey() {
+        if (currentUser == null || userManager == null) {
+            return;
+        }
+        JPasswordField passwordField = new JPasswordField();
+        if (JOptionPane.showConfirmDialog(frame, passwordField, "Password of " + currentUser.getUsername(),
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        String password = new String(passwordField.getPassword());
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Select the containers to move to the new key");
+        fileChooser.setMultiSelectionEnabled(true);
+        Workspace open = workspace;
+        if (open != null) {
+            fileChooser.setSelectedFile(open.getContainerFile());
+        }
+        if (fileChooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        List<File> containers = List.of(fileChooser.getSelectedFiles());
+        boolean includesOpen = open != null && containers.stream().anyMatch(file -> file.getAbsoluteFile().equals(open.getContainerFile().getAbsoluteFile()));
+        OperationExecutor.Task<Void> rotation = () -> {
+            try {
+                contextMenuManager.resetProgressBar();
+                if (includesOpen && open.hasChanges()) {
+                    open.save(progressListener, CancellationToken.NONE);
                 }
+                currentUser = userManager.rotateKey(currentUser.getUsername(), password, containers);
+                if (includesOpen) {
+                    // The open container only opens with the new key now
+                    open.clear();
+                    container = new EncryptedContainer(currentUser.getEncryptionKey(), createContainerOptions());
+                    workspace = new Workspace(container, open.getContainerFile(), container.readIndex(open.getContainerFile()), tempDir, ConfigManager.getWorkspaceBudget());
+                    SwingUtilities.invokeLater(this::refreshTree);
+                }
+                System.out.println("Key rotated for " + currentUser.getUsername() + ", containers moved over: " + containers.size());
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "Key rotated for " + containers.size() + " container(s)."));
+            } catch (Exception e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() ->
+                        JOptionPane.showMessageDialog(frame, "Error while rotating the key: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE)
+                );
+            } finally {
+                contextMenuManager.updateProgressBarCompleted();
             }
+            return null;
+        };
+        if (includesOpen) {
+            operations.submit("Rotate key", OperationExecutor.Priority.NORMAL, open.getContainerFile(), OperationExecutor.Access.WRITE, rotation);
+        } else {
+            operations.submit("Rotate key", OperationExecutor.Priority.NORMAL, null, OperationExecutor.Access.READ, rotation);
         }
     }
 
+    // Stops the saves, loads and imports that are running now; each one stops at its next file or chunk and leaves
+    // the container as it was before it started, or as far as its last checkpoint for an import
+    private void cancelRunning() {
+        cancellations.forEach(CancellationToken::cancel);
+    }
+
+    private CancellationToken startCancellable() {
+        CancellationToken cancellation = new CancellationToken();
+        cancellations.add(cancellation);
+        return cancellation;
+    }
+
+    // One line per save; the entries stored uncompressed are counted here and listed by the statistics
+    private void logSaveStatistics(String message, SaveStatistics statistics) {
+        System.out.println(message + " (" + statistics + ")");
+    }
+
+    // Waits for the last save, so it holds no lock on the container
     void exitCFM() {
-        new Thread(this::performExitTasksWithProgress).start();
+        operations.submit("Exit", OperationExecutor.Priority.INTERACTIVE, this::performExitTasksWithProgress);
     }
 
     void performExitTasksWithProgress() {
-        // Save the current state if necessary
-        saveCurrentContainerWithProgress();
+        // Write any save that is still waiting and stop the writer
+        saveScheduler.shutdown();
 
         // Clean up resources if necessary
         if (tempDir != null) {
@@ -487,27 +723,67 @@ public class FileManager {
         }
 
         // Exit the application
+        System.out.println("Operations: " + operations.getMetrics());
         System.out.println("Exiting the application...");
         System.exit(0);
     }
 
+    // Called after every change; the save itself is debounced and runs on the save scheduler's writer thread
+    public void requestSave() {
+        saveScheduler.requestSave();
+    }
+
+    // The save scheduler decides when to save and runs the save on its own writer thread, which waits for the
+    // container's write lock like any other write. It takes no operation thread, so imports and opens that wait
+    // for a save while holding one cannot starve it. The event thread only asks the workspace about its index,
+    // which a running save does not lock, so nothing on it waits for the save.
+    private void saveInBackground() {
+        Workspace current = workspace;
+        if (current == null) {
+            return;
+        }
+        try {
+            operations.runLocked(current.getContainerFile(), OperationExecutor.Access.WRITE, () -> {
+                saveCurrentContainerWithProgress();
+                return null;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Checkpoint saves run on the import's own thread under the container's write lock rather than through the
+    // save scheduler, and leave the progress bar to the import
+    private void saveDuringImport(Workspace current) throws Exception {
+        operations.runLocked(current.getContainerFile(), OperationExecutor.Access.WRITE, () -> {
+            SaveStatistics statistics = current.save(ProgressListener.NONE, CancellationToken.NONE);
+            logSaveStatistics("Import checkpoint saved: " + current.getContainerFile(), statistics);
+            return null;
+        });
+    }
+
     public void saveCurrentContainerWithProgress() {
-        if (container != null && currentUser != null) {
-            String lastContainerPath = config.get("lastContainerPath_" + currentUser.getUsername());
-            if (lastContainerPath != null) {
-                try {
+        if (workspace != null && currentUser != null) {
+            CancellationToken cancellation = startCancellable();
+            try {
+                if (workspace.hasChanges()) {
                     contextMenuManager.resetProgressBar();
-                    File containerFile = new File(lastContainerPath);
-                    container.saveContainerWithProgress(containerFile, tempDir, progressBar);
-                    System.out.println("Container saved: " + lastContainerPath);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    SwingUtilities.invokeLater(() ->
-                            JOptionPane.showMessageDialog(frame, "Error while saving container: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE)
-                    );
-                } finally {
-                    contextMenuManager.updateProgressBarCompleted();
+                    SaveStatistics statistics = workspace.save(progressListener, cancellation);
+                    logSaveStatistics("Container saved: " + workspace.getContainerFile(), statistics);
                 }
+            } catch (InterruptedIOException | ClosedByInterruptException e) {
+                // The changes stay pending and go out with the next save
+                System.out.println("Save cancelled: " + workspace.getContainerFile());
+            } catch (Exception e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() ->
+                        JOptionPane.showMessageDialog(frame, "Error while saving container: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE)
+                );
+            } finally {
+                cancellations.remove(cancellation);
+                contextMenuManager.updateProgressBarCompleted();
             }
         }
     }
@@ -525,8 +801,16 @@ public class FileManager {
     }
 
     public void refreshTree() {
-        root.removeAllChildren();
-        loadDirectory(tempDir, root);
+        if (workspace != null) {
+            try {
+                loadIndex(workspace.snapshotIndex(), root);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            root.removeAllChildren();
+            loadDirectory(tempDir, root);
+        }
     }
 
     public JFrame getFrame() {
@@ -537,10 +821,18 @@ public class FileManager {
         return tree;
     }
 
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
     public DefaultMutableTreeNode getRoot() {
         return root;
     }
 
+    public OperationExecutor getOperations() {
+        return operations;
+    }
+
     public JProgressBar getProgressBar() {
         return progressBar;
     }
@@ -0,0 +1,33 @@
+package view;
+
+import model.Progress;
+import model.ProgressListener;
+
+import javax.swing.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Shows progress reports in a progress bar. Only the newest report is kept, and at most one update waits on the
+// event dispatch thread at a time, so a burst of reports never piles up in the event queue.
+public class ProgressBarListener implements ProgressListener {
+    private final JProgressBar progressBar;
+    private final AtomicReference<Progress> pending = new AtomicReference<>();
+
+    public ProgressBarListener(JProgressBar progressBar) {
+        this.progressBar = progressBar;
+    }
+
+    @Override
+    public void onProgress(Progress progress) {
+        if (pending.getAndSet(progress) == null) {
+            SwingUtilities.invokeLater(this::show);
+        }
+    }
+
+    private void show() {
+        Progress progress = pending.getAndSet(null);
+        if (progress != null) {
+            progressBar.setValue(progress.getPercent());
+            progressBar.setString(progress.toString());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package benchmark;
+
+import model.CompressionCodec;
+import model.CompressionCodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Compares the chunk codecs on 1 MiB blocks, the way the container uses them. Each codec gets warm-up rounds
+// before the measured ones, results are fed into a checksum so the JIT cannot drop the work, and every block is
+// checked to decompress to the original. Pass files to measure on real data instead of the generated samples:
+//   mvn test-compile && java -cp target/classes:target/test-classes benchmark.CodecBenchmark [file...]
+public class CodecBenchmark {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, byte[]> samples = args.length > 0 ? readFiles(args) : generateSamples();
+        long sink = 0;
+        System.out.printf("%-10s %-8s %8s %14s %16s%n", "data", "codec", "ratio", "compress MB/s", "decompress MB/s");
+        for (Map.Entry<String, byte[]> sample : samples.entrySet()) {
+            for (CompressionCodec codec : CompressionCodecs.all()) {
+                Result result = run(codec, sample.getValue());
+                sink += result.checksum;
+                System.out.printf("%-10s %-8s %8.3f %14.1f %16.1f%n", sample.getKey(), codec.getName(),
+                        result.ratio, result.compressMBps, result.decompressMBps);
+            }
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    private static Result run(CompressionCodec codec, byte[] data) throws IOException {
+        List<byte[]> blocks = new ArrayList<>();
+        for (int off = 0; off < data.length; off += BLOCK_SIZE) {
+            blocks.add(Arrays.copyOfRange(data, off, Math.min(data.length, off + BLOCK_SIZE)));
+        }
+        byte[][] compressed = new byte[blocks.size()][BLOCK_SIZE + BLOCK_SIZE / 2];
+        int[] lengths = new int[blocks.size()];
+        byte[] restored = new byte[BLOCK_SIZE];
+        Result result = new Result();
+
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            boolean measured = round >= WARMUP_ROUNDS;
+            long compressedBytes = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < blocks.size(); i++) {
+                byte[] block = blocks.get(i);
+                lengths[i] = codec.compress(block, 0, block.length, compressed[i], 0, compressed[i].length);
+                compressedBytes += lengths[i];
+            }
+            long compressNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < blocks.size(); i++) {
+                codec.decompress(compressed[i], 0, lengths[i], restored, 0, blocks.get(i).length);
+                result.checksum += restored[i % blocks.get(i).length];
+            }
+            long decompressNanos = System.nanoTime() - start;
+
+            if (measured) {
+                result.ratio = (double) compressedBytes / data.length;
+                result.compressMBps += megabytes(data.length) / (compressNanos / 1e9) / MEASURED_ROUNDS;
+                result.decompressMBps += megabytes(data.length) / (decompressNanos / 1e9) / MEASURED_ROUNDS;
+            }
+        }
+
+        for (int i = 0; i < blocks.size(); i++) {
+            byte[] block = blocks.get(i);
+            codec.decompress(compressed[i], 0, lengths[i], restored, 0, block.length);
+            if (!Arrays.equals(block, 0, block.length, restored, 0, block.length)) {
+                throw new IllegalStateException(codec.getName() + " did not restore block " + i);
+            }
+        }
+        return result;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static Map<String, byte[]> readFiles(String[] files) throws IOException {
+        Map<String, byte[]> samples = new LinkedHashMap<>();
+        for (String file : files) {
+            Path path = Paths.get(file);
+            samples.put(path.getFileName().toString(), Files.readAllBytes(path));
+        }
+        return samples;
+    }
+
+    // Text, log lines, structured binary records and random bytes standing in for media
+    private static Map<String, byte[]> generateSamples() {
+        Random random = new Random(42);
+        int size = 32 * BLOCK_SIZE;
+        String[] words = {"the", "container", "file", "fortress", "user", "key", "index", "chunk", "save", "volume",
+                "encrypted", "directory", "workspace", "record", "of", "and", "to", "a", "is", "in"};
+
+        StringBuilder text = new StringBuilder(size);
+        while (text.length() < size) {
+            text.append(words[(int) Math.abs(random.nextGaussian() * 5) % words.length]).append(random.nextInt(8) == 0 ? ".\n" : " ");
+        }
+
+        StringBuilder log = new StringBuilder(size);
+        long time = 1_700_000_000_000L;
+        while (log.length() < size) {
+            time += random.nextInt(2000);
+            log.append('{').append("\"time\":").append(time).append(",\"level\":\"").append(random.nextInt(10) == 0 ? "WARN" : "INFO")
+                    .append("\",\"thread\":\"worker-").append(random.nextInt(8)).append("\",\"bytes\":").append(random.nextInt(1 << 20))
+                    .append(",\"path\":\"/data/").append(words[random.nextInt(words.length)]).append('/').append(random.nextInt(1000)).append("\"}\n");
+        }
+
+        byte[] binary = new byte[size];
+        for (int off = 0; off + 32 <= size; off += 32) {
+            long id = off / 32;
+            for (int i = 0; i < 8; i++) {
+                binary[off + i] = (byte) (id >>> (8 * i));
+            }
+            binary[off + 8] = (byte) random.nextInt(4);
+            for (int i = 16; i < 24; i++) {
+                binary[off + i] = (byte) random.nextInt(256);
+            }
+        }
+
+        byte[] noise = new byte[size];
+        random.nextBytes(noise);
+
+        Map<String, byte[]> samples = new LinkedHashMap<>();
+        samples.put("text", Arrays.copyOf(text.toString().getBytes(), size));
+        samples.put("log", Arrays.copyOf(log.toString().getBytes(), size));
+        samples.put("binary", binary);
+        samples.put("random", noise);
+        return samples;
+    }
+
+    private static final class Result {
+        private double ratio;
+        private double compressMBps;
+        private double decompressMBps;
+        private long checksum;
+    }
+}
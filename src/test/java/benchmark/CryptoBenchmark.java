@@ -0,0 +1,113 @@
+package benchmark;
+
+import model.ContainerEntry;
+import model.ContainerOptions;
+import model.ContainerReader;
+import model.EncryptedContainer;
+import model.KeyManager;
+import model.ProgressListener;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Decrypts the chunks of a container the way it was done before the crypto engine, with a new Cipher and a new
+// output array for every chunk, and the way it is done now, by reading an entry of a real AES-GCM container
+// through ContainerReader. Reports throughput and the bytes allocated per MB read, summed over all threads
+// because the reader decrypts ahead on the common pool.
+//   mvn test-compile && java -cp target/classes:target/test-classes benchmark.CryptoBenchmark [size MB]
+public class CryptoBenchmark {
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        SecretKey key = KeyManager.generateKey();
+        SecureRandom random = new SecureRandom();
+        byte[] data = new byte[sizeMB * 1024 * 1024];
+        random.nextBytes(data);
+
+        Path directory = Files.createTempDirectory("crypto-benchmark");
+        try {
+            Path workspace = Files.createDirectory(directory.resolve("workspace"));
+            Files.write(workspace.resolve("data.bin"), data);
+            File file = directory.resolve("benchmark.ffc").toFile();
+            ContainerOptions options = new ContainerOptions();
+            options.setCipherSuite("aes-gcm");
+            new EncryptedContainer(key, options).saveContainerWithProgress(file, workspace, ProgressListener.NONE, null);
+
+            long sink = 0;
+            System.out.printf("%-8s %10s %16s%n", "path", "MB/s", "bytes/MB");
+            // The chunks the old path decrypts are sealed once up front, so only opening them is measured
+            byte[][] nonces = new byte[data.length / CHUNK_SIZE][12];
+            byte[][] sealed = new byte[nonces.length][];
+            for (int i = 0; i < sealed.length; i++) {
+                random.nextBytes(nonces[i]);
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, nonces[i]));
+                sealed[i] = cipher.doFinal(data, i * CHUNK_SIZE, CHUNK_SIZE);
+            }
+            double[] result = new double[2];
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                long allocatedStart = allocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < sealed.length; i++) {
+                    Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, nonces[i]));
+                    sink += cipher.doFinal(sealed[i])[CHUNK_SIZE / 2];
+                }
+                measure(round, start, allocatedStart, sizeMB, result);
+            }
+            System.out.printf("%-8s %10.1f %16.0f%n", "before", result[0], result[1]);
+
+            result = new double[2];
+            try (ContainerReader reader = new ContainerReader(file.toPath(), key)) {
+                ContainerEntry entry = reader.getIndex().get("data.bin");
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    long allocatedStart = allocatedBytes();
+                    long start = System.nanoTime();
+                    reader.readEntry(entry, OutputStream.nullOutputStream());
+                    measure(round, start, allocatedStart, sizeMB, result);
+                }
+            }
+            System.out.printf("%-8s %10.1f %16.0f%n", "engine", result[0], result[1]);
+            System.out.println("checksum " + sink);
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void measure(int round, long start, long allocatedStart, int sizeMB, double[] result) {
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedStart;
+        if (round >= WARMUP_ROUNDS) {
+            result[0] += sizeMB / (nanos / 1e9) / MEASURED_ROUNDS;
+            result[1] += (double) allocated / sizeMB / MEASURED_ROUNDS;
+        }
+    }
+
+    // Threads that ended in between drop out of the sum. On a single CPU the common pool starts a thread for every
+    // task, so the allocations of the engine path are only counted on machines with more than one.
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long allocated : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,129 @@
+package benchmark;
+
+import model.CompressionDictionary;
+import model.DeflateCodec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Compresses small files one by one with plain deflate and with deflate against dictionaries of growing size,
+// trained on half of the files and measured on the other half so they are not judged on the data they were
+// built from. Pass a directory to measure on its small files instead of the generated JSON documents:
+//   mvn test-compile && java -cp target/classes:target/test-classes benchmark.DictionaryBenchmark [directory]
+public class DictionaryBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        List<byte[]> files = args.length > 0 ? readFiles(Paths.get(args[0])) : generateFiles();
+        List<byte[]> training = new ArrayList<>();
+        List<byte[]> measured = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            (i % 2 == 0 ? training : measured).add(files.get(i));
+        }
+
+        long sink = 0;
+        System.out.printf("%-12s %8s %14s %16s%n", "dictionary", "ratio", "compress MB/s", "decompress MB/s");
+        Result plain = run(new DeflateCodec(6), measured);
+        sink += plain.checksum;
+        System.out.printf("%-12s %8.3f %14.1f %16.1f%n", "none", plain.ratio, plain.compressMBps, plain.decompressMBps);
+        for (int size = 2 * 1024; size <= CompressionDictionary.MAX_SIZE; size *= 2) {
+            byte[] dictionary = CompressionDictionary.train(training, size);
+            if (dictionary == null) {
+                System.out.println("too few files to train a dictionary");
+                return;
+            }
+            Result result = run(new DeflateCodec(6, dictionary), measured);
+            sink += result.checksum;
+            System.out.printf("%-12s %8.3f %14.1f %16.1f%n", dictionary.length + " bytes", result.ratio, result.compressMBps, result.decompressMBps);
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    private static Result run(DeflateCodec codec, List<byte[]> files) throws IOException {
+        long total = files.stream().mapToLong(file -> file.length).sum();
+        byte[][] compressed = new byte[files.size()][];
+        int[] lengths = new int[files.size()];
+        Result result = new Result();
+
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long compressedBytes = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < files.size(); i++) {
+                byte[] file = files.get(i);
+                compressed[i] = new byte[file.length + file.length / 2 + 64];
+                lengths[i] = codec.compress(file, 0, file.length, compressed[i], 0, compressed[i].length);
+                compressedBytes += lengths[i];
+            }
+            long compressNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < files.size(); i++) {
+                byte[] restored = new byte[files.get(i).length];
+                codec.decompress(compressed[i], 0, lengths[i], restored, 0, restored.length);
+                if (round == 0 && !Arrays.equals(files.get(i), restored)) {
+                    throw new IllegalStateException(codec.getName() + " did not restore file " + i);
+                }
+                result.checksum += restored[restored.length / 2];
+            }
+            long decompressNanos = System.nanoTime() - start;
+
+            if (round >= WARMUP_ROUNDS) {
+                result.ratio = (double) compressedBytes / total;
+                result.compressMBps += total / (1024.0 * 1024.0) / (compressNanos / 1e9) / MEASURED_ROUNDS;
+                result.decompressMBps += total / (1024.0 * 1024.0) / (decompressNanos / 1e9) / MEASURED_ROUNDS;
+            }
+        }
+        return result;
+    }
+
+    private static List<byte[]> readFiles(Path directory) throws IOException {
+        List<byte[]> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                long size = Files.size(path);
+                if (size > 0 && size <= CompressionDictionary.MAX_SAMPLE_SIZE) {
+                    files.add(Files.readAllBytes(path));
+                }
+            }
+        }
+        return files;
+    }
+
+    // Records that share their structure and vocabulary but differ in their values
+    private static List<byte[]> generateFiles() {
+        Random random = new Random(42);
+        String[] owners = {"alice", "bob", "carol", "dave", "erin", "frank"};
+        String[] states = {"active", "archived", "pending", "deleted"};
+        List<byte[]> files = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            StringBuilder json = new StringBuilder();
+            json.append("{\n  \"id\": ").append(random.nextInt(1_000_000))
+                    .append(",\n  \"owner\": \"").append(owners[random.nextInt(owners.length)])
+                    .append("\",\n  \"status\": \"").append(states[random.nextInt(states.length)])
+                    .append("\",\n  \"created\": \"2024-").append(10 + random.nextInt(3)).append('-').append(10 + random.nextInt(18))
+                    .append("T").append(10 + random.nextInt(14)).append(":").append(10 + random.nextInt(50)).append(":00Z\",\n  \"tags\": [");
+            for (int t = random.nextInt(5); t >= 0; t--) {
+                json.append("\"tag-").append(random.nextInt(40)).append(t > 0 ? "\", " : "\"");
+            }
+            json.append("],\n  \"settings\": {\"retention\": ").append(random.nextInt(365))
+                    .append(", \"encrypted\": true, \"compression\": \"auto\", \"versions\": ").append(random.nextInt(10)).append("}\n}\n");
+            files.add(json.toString().getBytes());
+        }
+        return files;
+    }
+
+    private static final class Result {
+        private double ratio;
+        private double compressMBps;
+        private double decompressMBps;
+        private long checksum;
+    }
+}
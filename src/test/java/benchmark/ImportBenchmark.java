@@ -0,0 +1,83 @@
+package benchmark;
+
+import model.FileTransfer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Imports a tree of many small files with a growing number of parallel copies and reports files per second, to
+// show how far the import scales before the file system becomes the limit. Each setting gets a warm-up import
+// before the measured ones. Pass a directory to import it instead of a generated tree of 20,000 files of 4 KB:
+//   mvn test-compile && java -cp target/classes:target/test-classes benchmark.ImportBenchmark [directory]
+public class ImportBenchmark {
+    private static final int GENERATED_DIRECTORIES = 200;
+    private static final int GENERATED_FILES_PER_DIRECTORY = 100;
+    private static final int GENERATED_FILE_SIZE = 4 * 1024;
+    private static final int[] PARALLEL_COPIES = {1, 2, 4, 8, 16, 32};
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("import-benchmark");
+        Path source = args.length > 0 ? Paths.get(args[0]) : generate(directory.resolve("source"));
+        Path target = directory.resolve("workspace");
+        long files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(Files::isRegularFile).count();
+        }
+        try {
+            System.out.printf("importing %d files%n", files);
+            System.out.printf("%-8s %12s%n", "copies", "files/s");
+            for (int parallelCopies : PARALLEL_COPIES) {
+                double best = 0;
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    delete(target);
+                    Files.createDirectories(target);
+                    long start = System.nanoTime();
+                    FileTransfer.copyInto(List.of(source), target, parallelCopies, null, null);
+                    long nanos = System.nanoTime() - start;
+                    if (round >= WARMUP_ROUNDS) {
+                        best = Math.max(best, files / (nanos / 1e9));
+                    }
+                }
+                System.out.printf("%-8d %12.0f%n", parallelCopies, best);
+            }
+        } finally {
+            delete(target);
+            if (args.length == 0) {
+                delete(source);
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static Path generate(Path source) throws IOException {
+        byte[] content = new byte[GENERATED_FILE_SIZE];
+        Random random = new Random(42);
+        for (int d = 0; d < GENERATED_DIRECTORIES; d++) {
+            Path subdirectory = Files.createDirectories(source.resolve("dir" + d));
+            for (int f = 0; f < GENERATED_FILES_PER_DIRECTORY; f++) {
+                random.nextBytes(content);
+                Files.write(subdirectory.resolve("file" + f + ".bin"), content);
+            }
+        }
+        return source;
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path item : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(item);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package benchmark;
+
+import model.FileTransfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Imports one large file into a workspace directory the ways the application used to, through a 1 KB heap buffer
+// and through Files.copy, and the way it does now, with FileTransfer handing the copy to the kernel, next to a
+// stream with a 256 KB buffer as the best a copy through the heap does. Each way gets warm-up rounds before the measured ones and every
+// copy is checked against the source size. The source is read from the page cache after the first round, so the
+// numbers show the cost of the copy itself rather than of the disk. Pass a file to import it instead of a
+// generated one of 512 MB:
+//   mvn test-compile && java -cp target/classes:target/test-classes benchmark.TransferBenchmark [file]
+public class TransferBenchmark {
+    private static final long GENERATED_SIZE = 512L * 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("transfer-benchmark");
+        Path source = args.length > 0 ? Paths.get(args[0]) : generate(directory.resolve("source.bin"));
+        Path target = directory.resolve("imported.bin");
+        long size = Files.size(source);
+        try {
+            System.out.printf("importing %.1f MB%n", megabytes(size));
+            System.out.printf("%-22s %10s%n", "path", "MB/s");
+            Map<String, Copy> copies = new LinkedHashMap<>();
+            copies.put("1 KB stream (before)", TransferBenchmark::copyKilobyteBuffer);
+            copies.put("Files.copy (before)", TransferBenchmark::copyFiles);
+            copies.put("256 KB stream", TransferBenchmark::copyLargeBuffer);
+            copies.put("transferTo", FileTransfer::copy);
+            for (Map.Entry<String, Copy> copy : copies.entrySet()) {
+                double best = 0;
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    Files.deleteIfExists(target);
+                    long start = System.nanoTime();
+                    copy.getValue().copy(source, target);
+                    long nanos = System.nanoTime() - start;
+                    if (Files.size(target) != size) {
+                        throw new IOException("Copy is " + Files.size(target) + " bytes instead of " + size);
+                    }
+                    if (round >= WARMUP_ROUNDS) {
+                        best = Math.max(best, megabytes(size) / (nanos / 1e9));
+                    }
+                }
+                System.out.printf("%-22s %10.1f%n", copy.getKey(), best);
+            }
+        } finally {
+            Files.deleteIfExists(target);
+            if (args.length == 0) {
+                Files.deleteIfExists(source);
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    // How ContextMenuManager used to copy a file out
+    private static void copyKilobyteBuffer(Path source, Path target) throws IOException {
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    // How files used to be imported
+    private static void copyFiles(Path source, Path target) throws IOException {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void copyLargeBuffer(Path source, Path target) throws IOException {
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[FileTransfer.BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static Path generate(Path file) throws IOException {
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < GENERATED_SIZE; written += block.length) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        return file;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private interface Copy {
+        void copy(Path source, Path target) throws IOException;
+    }
+}
@@ -0,0 +1,65 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileTransferTest {
+    @TempDir
+    Path temp;
+
+    // An import cancelled halfway through a file that replaces an entry must not save a truncated version of it
+    @Test
+    void cancelledImportKeepsTheEntryItWouldReplace() throws Exception {
+        byte[] original = bytes(1, 64 * 1024);
+        byte[] replacement = bytes(2, 32 * 1024 * 1024);
+        Path source = Files.createDirectory(temp.resolve("source"));
+        Files.write(source.resolve("data.bin"), original);
+        SecretKey key = KeyManager.generateKey();
+        EncryptedContainer container = new EncryptedContainer(key);
+        File file = temp.resolve("test.ffc").toFile();
+        container.saveContainerWithProgress(file, source, ProgressListener.NONE, CancellationToken.NONE);
+
+        Path workspaceDirectory = Files.createDirectory(temp.resolve("workspace"));
+        Workspace workspace = new Workspace(container, file, container.readIndex(file), workspaceDirectory, 1L << 30);
+        workspace.materialize("data.bin");
+        Path imported = Files.createDirectory(temp.resolve("imported"));
+        Files.write(imported.resolve("data.bin"), replacement);
+
+        // Cancels as soon as the first slice of the copy has been written
+        CancellationToken cancellation = new CancellationToken();
+        ProgressTracker progress = new ProgressTracker(snapshot -> {
+            if (snapshot.getBytesDone() > 0) {
+                cancellation.cancel();
+            }
+        }, Progress.Phase.IMPORTING, Integer.MAX_VALUE, cancellation);
+        assertThrows(InterruptedIOException.class,
+                () -> FileTransfer.copyInto(List.of(imported.resolve("data.bin")), workspaceDirectory, 1, progress, null));
+        workspace.save(ProgressListener.NONE, CancellationToken.NONE);
+
+        try (Stream<Path> paths = Files.list(workspaceDirectory)) {
+            assertTrue(paths.noneMatch(FileTransfer::isPartial));
+        }
+        Path loaded = Files.createDirectory(temp.resolve("loaded"));
+        new EncryptedContainer(key).loadContainerWithProgress(file, loaded, ProgressListener.NONE, CancellationToken.NONE);
+        assertArrayEquals(original, Files.readAllBytes(loaded.resolve("data.bin")));
+    }
+
+    private static byte[] bytes(long seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}